@@ -0,0 +1,75 @@
+package vn.edu.iuh.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Configuration;
+import vn.edu.iuh.repositories.ChatAttachmentRepository;
+import vn.edu.iuh.repositories.ChatRepository;
+import vn.edu.iuh.repositories.FriendRepository;
+import vn.edu.iuh.repositories.SearchableMessageRepository;
+import vn.edu.iuh.repositories.UserChatRepository;
+
+/**
+ * Move chat entries and friends embedded in user profiles to their own collections, fill the reaction counters of
+ * messages stored before they existed, drop the embedded search tokens, give chats a version, replace pinned message
+ * copies with IDs, rebuild the search and attachment collections when they are empty or the search one was built
+ * before it held every message, and fill the search words of indexed messages. Every step only matches data it has
+ * not migrated yet so the runner does nothing on later starts
+ */
+@Configuration
+@RequiredArgsConstructor
+@Slf4j
+public class DataMigration implements ApplicationRunner {
+    private final UserChatRepository userChatRepository;
+    private final FriendRepository friendRepository;
+    private final ChatRepository chatRepository;
+    private final SearchableMessageRepository searchableMessageRepository;
+    private final ChatAttachmentRepository chatAttachmentRepository;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int migrated = userChatRepository.migrateEmbeddedChats();
+        if (migrated > 0) {
+            log.info("Migrated chat entries of {} profiles to user_chats", migrated);
+        }
+        migrated = friendRepository.migrateEmbeddedFriends();
+        if (migrated > 0) {
+            log.info("Migrated friends of {} profiles to friends", migrated);
+        }
+        migrated = chatRepository.backfillReactionCounts();
+        if (migrated > 0) {
+            log.info("Filled reaction counters of {} chats", migrated);
+        }
+        long dropped = chatRepository.dropSearchTokens();
+        if (dropped > 0) {
+            log.info("Removed embedded search tokens of {} chats", dropped);
+        }
+        long versioned = chatRepository.initVersions();
+        if (versioned > 0) {
+            log.info("Gave a version to {} chats", versioned);
+        }
+        long pinned = chatRepository.migratePinnedMessages();
+        if (pinned > 0) {
+            log.info("Replaced pinned message copies of {} chats with IDs", pinned);
+        }
+        if ((searchableMessageRepository.count() == 0 && chatRepository.count() > 0) || searchableMessageRepository.existsByAttachmentTypesIsNull()) {
+            log.info("Indexed {} messages for search", searchableMessageRepository.rebuild());
+        }
+        int droppedIndexes = searchableMessageRepository.dropUnusedIndexes();
+        if (droppedIndexes > 0) {
+            log.info("Dropped {} unused indexes of searchable messages", droppedIndexes);
+        }
+        long tokenized = searchableMessageRepository.backfillTokens();
+        if (tokenized > 0) {
+            log.info("Filled search words of {} indexed messages", tokenized);
+        }
+        if (chatAttachmentRepository.count() == 0) {
+            long indexed = chatAttachmentRepository.rebuild();
+            if (indexed > 0) {
+                log.info("Indexed {} attachments for the chat galleries", indexed);
+            }
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package vn.edu.iuh.config;
 
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.mongodb.config.EnableMongoAuditing;
+import vn.edu.iuh.repositories.MongoCommandCounter;
 
 @Configuration
 @EnableMongoAuditing
 public class MongoConfig {
-
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoCommandCounter() {
+        return builder -> builder.addCommandListener(new MongoCommandCounter());
+    }
 }
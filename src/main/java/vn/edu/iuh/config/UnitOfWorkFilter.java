@@ -0,0 +1,48 @@
+package vn.edu.iuh.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import vn.edu.iuh.repositories.UnitOfWork;
+
+import java.io.IOException;
+
+/**
+ * Open a {@link UnitOfWork} around every HTTP request, then log how many Mongo commands it issued and record them in
+ * the {@code http.server.mongo.commands} and {@code http.server.identity.map.hits} summaries, tagged by method and
+ * route pattern
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@Slf4j
+@RequiredArgsConstructor
+public class UnitOfWorkFilter extends OncePerRequestFilter {
+    private final MeterRegistry meterRegistry;
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response, @NonNull FilterChain filterChain) throws ServletException, IOException {
+        UnitOfWork unitOfWork = UnitOfWork.begin();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            UnitOfWork.end();
+            log.debug("{} {}: {} Mongo commands, {} entities reused", request.getMethod(), request.getRequestURI(), unitOfWork.getMongoCommands(), unitOfWork.getIdentityMapHits());
+            // the route pattern instead of the URI keeps chat and message IDs out of the tags
+            Object route = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            Tags tags = Tags.of("method", request.getMethod(), "uri", route == null ? "UNKNOWN" : route.toString());
+            meterRegistry.summary("http.server.mongo.commands", tags).record(unitOfWork.getMongoCommands());
+            meterRegistry.summary("http.server.identity.map.hits", tags).record(unitOfWork.getIdentityMapHits());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package vn.edu.iuh.config;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import vn.edu.iuh.models.UserInfo;
+import vn.edu.iuh.models.UserSummary;
+import vn.edu.iuh.repositories.UserSummaryCache;
+
+import java.io.IOException;
+
+/**
+ * Write a referenced profile as its {@link UserSummary} taken from {@link UserSummaryCache}, so rendering a sender
+ * never resolves the reference. Spring's Jackson setup injects the cache; a mapper created outside Spring falls back
+ * to summarizing the profile itself
+ */
+public class UserSummarySerializer extends JsonSerializer<UserInfo> {
+    private final UserSummaryCache userSummaryCache;
+
+    public UserSummarySerializer() {
+        this(null);
+    }
+
+    @Autowired
+    public UserSummarySerializer(UserSummaryCache userSummaryCache) {
+        this.userSummaryCache = userSummaryCache;
+    }
+
+    @Override
+    public void serialize(UserInfo userInfo, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        UserSummary summary = userSummaryCache == null ? UserSummary.from(userInfo) : userSummaryCache.get(userInfo);
+        if (summary == null) {
+            gen.writeNull();
+        } else {
+            serializers.defaultSerializeValue(summary, gen);
+        }
+    }
+}
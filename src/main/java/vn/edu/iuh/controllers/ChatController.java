@@ -9,15 +9,25 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import vn.edu.iuh.dto.CursorPageDTO;
+import vn.edu.iuh.dto.MessageFilterDTO;
 import vn.edu.iuh.dto.MessageRequestDTO;
+import vn.edu.iuh.dto.MessageWindowDTO;
+import vn.edu.iuh.dto.MessageSearchHitDTO;
 import vn.edu.iuh.dto.ReactionMessageDTO;
 import vn.edu.iuh.models.Chat;
+import vn.edu.iuh.models.ChatAttachment;
 import vn.edu.iuh.models.Message;
+import vn.edu.iuh.models.Reaction;
+import vn.edu.iuh.models.enums.AttachmentType;
 import vn.edu.iuh.security.UserPrincipal;
 import vn.edu.iuh.services.ChatService;
 
+import java.time.LocalDateTime;
+
 @RestController
 @RequestMapping("/v1/chats")
 @Tag(name = "Chats Controller", description = "Quản lý chat")
@@ -27,6 +37,19 @@ import vn.edu.iuh.services.ChatService;
 public class ChatController {
     private final ChatService chatService;
 
+    @Operation(
+            summary = "Tìm kiếm tin nhắn trong tất cả phòng chat",
+            description = """
+                    Tìm kiếm tin nhắn văn bản trong tất cả phòng chat của người dùng (có phân trang), không phân biệt dấu và hoa thường. Kết quả được xếp theo độ liên quan rồi theo thời gian gửi, mỗi kết quả gồm phòng chat, người gửi và đoạn trích quanh từ khóa.
+                                        
+                    Không trả về tin nhắn đã thu hồi, tin nhắn bạn đã xóa và tin nhắn trước thời điểm bạn xóa lịch sử trò chuyện.
+                    """
+    )
+    @GetMapping("/search")
+    public Page<MessageSearchHitDTO> searchMessages(@AuthenticationPrincipal UserPrincipal userPrincipal, @RequestParam String content, @RequestParam(required = false, defaultValue = "0") int page, @RequestParam(required = false, defaultValue = "20") int size) {
+        return chatService.searchMessages(userPrincipal, content, PageRequest.of(page, size));
+    }
+
     @Operation(
             summary = "Lấy tin nhắn của phòng chat",
             description = """
@@ -51,13 +74,91 @@ public class ChatController {
         return chatService.getAllMessages(chatId, userPrincipal, pageable, content);
     }
 
+    @Operation(
+            summary = "Lọc tin nhắn của phòng chat",
+            description = """
+                    Lọc tin nhắn của phòng chat theo người gửi `senderId`, khoảng thời gian `from` - `to` (ISO, ví dụ `2024-04-01T00:00:00`) và loại tệp đính kèm `attachmentType` (IMAGE, VIDEO, FILE). Các điều kiện có thể kết hợp với nhau.
+                                        
+                    Kết quả được sắp xếp mới nhất trước và phân trang bằng con trỏ: lấy trang tiếp theo bằng cách truyền `nextCursor` của trang trước vào `cursor`.
+                                        
+                    <strong>⚠️ Vui lòng không xử lý các lỗi dưới đây phía client. Các lỗi này chỉ đóng vai trò bảo vệ API khỏi các lỗi cố tình.⚠️</strong>
+                                        
+                    <strong>Forbidden: </strong>
+                    - Bạn không phải là thành viên của phòng chat này
+                                        
+                    <strong>Not Found: </strong>
+                    - Không tìm thấy ID phòng chat
+                    """
+    )
+    @GetMapping("/{chat-id}/messages/filter")
+    public CursorPageDTO<Message> filterMessages(@PathVariable("chat-id") String chatId, @AuthenticationPrincipal UserPrincipal userPrincipal,
+                                                 @RequestParam(required = false) String senderId,
+                                                 @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                 @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                 @RequestParam(required = false) AttachmentType attachmentType,
+                                                 @RequestParam(required = false) String cursor,
+                                                 @RequestParam(required = false, defaultValue = "20") int size) {
+        MessageFilterDTO filter = MessageFilterDTO.builder()
+                .senderId(senderId)
+                .from(from)
+                .to(to)
+                .attachmentType(attachmentType)
+                .cursor(cursor)
+                .size(size)
+                .build();
+        return chatService.filterMessages(chatId, userPrincipal, filter);
+    }
+
+    @Operation(
+            summary = "Lấy ảnh, video và tệp đã chia sẻ trong phòng chat",
+            description = """
+                    Lấy danh sách tệp đính kèm của phòng chat, mới nhất trước, có thể lọc theo loại `type` (IMAGE, VIDEO, FILE). Mỗi phần tử gồm `messageId` để mở tin nhắn chứa tệp.
+                                        
+                    Phân trang bằng con trỏ: lấy trang tiếp theo bằng cách truyền `nextCursor` của trang trước vào `cursor`.
+                                        
+                    <strong>⚠️ Vui lòng không xử lý các lỗi dưới đây phía client. Các lỗi này chỉ đóng vai trò bảo vệ API khỏi các lỗi cố tình.⚠️</strong>
+                                        
+                    <strong>Forbidden: </strong>
+                    - Bạn không phải là thành viên của phòng chat này
+                                        
+                    <strong>Not Found: </strong>
+                    - Không tìm thấy ID phòng chat
+                    """
+    )
+    @GetMapping("/{chat-id}/attachments")
+    public CursorPageDTO<ChatAttachment> getAllAttachments(@PathVariable("chat-id") String chatId, @AuthenticationPrincipal UserPrincipal userPrincipal, @RequestParam(required = false) AttachmentType type, @RequestParam(required = false) String cursor, @RequestParam(required = false, defaultValue = "30") int size) {
+        return chatService.findAttachments(chatId, userPrincipal, type, cursor, size);
+    }
+
+    @Operation(
+            summary = "Lấy tin nhắn xung quanh một tin nhắn",
+            description = """
+                    Lấy tin nhắn có ID `message-id` cùng tối đa `count` tin nhắn trước và sau nó theo thứ tự thời gian, dùng để nhảy tới tin nhắn được trả lời hoặc được ghim mà không cần tải lần lượt từng trang.
+                                        
+                    `hasOlder` và `hasNewer` cho biết còn tin nhắn cũ hơn hoặc mới hơn ngoài cửa sổ này hay không.
+                                        
+                    <strong>⚠️ Vui lòng không xử lý các lỗi dưới đây phía client. Các lỗi này chỉ đóng vai trò bảo vệ API khỏi các lỗi cố tình.⚠️</strong>
+                                        
+                    <strong>Forbidden: </strong>
+                    - Bạn không phải là thành viên của phòng chat này
+                                        
+                    <strong>Not Found: </strong>
+                    - Không tìm thấy ID phòng chat
+                    - Không tìm thấy tin nhắn
+                    """
+    )
+    @GetMapping("/{chat-id}/messages/{message-id}/around")
+    public MessageWindowDTO getMessagesAround(@PathVariable("chat-id") String chatId, @PathVariable("message-id") String messageId, @AuthenticationPrincipal UserPrincipal userPrincipal, @RequestParam(required = false, defaultValue = "20") int count) {
+        return chatService.findMessagesAround(chatId, messageId, userPrincipal, count);
+    }
+
     @Operation(
             summary = "Thả cảm xúc tin nhắn",
             description = """
                      
                      Cảm xúc gồm: LIKE, LOVE, CRY, ANGER, WOW. Có thể cho deploy sau 1s mới bắt đầu request để giảm tải cho hệ thống
                                        
-                     Response của API này sẽ được gửi đến người dùng thuộc phòng chat đó. Hãy bắt nó bằng cách đăng ký lắng nghe socket `/chatroom/{chatId}`
+                     Các lần thả cảm xúc liên tiếp được gộp lại và ghi một lần sau khoảng 0.5s, sau đó sự kiện `REACTION_CHANGED` sẽ được gửi đến người dùng thuộc phòng chat đó. Hãy bắt nó bằng cách đăng ký lắng nghe socket `/chatroom/{chatId}`
                                        
                     <strong>⚠️ Vui lòng không xử lý các lỗi dưới đây phía client. Các lỗi này chỉ đóng vai trò bảo vệ API khỏi các lỗi cố tình.⚠️</strong>
                                        
@@ -149,6 +250,26 @@ public class ChatController {
         return chatService.deleteReactionsMessage(messageId, chatId, userPrincipal);
     }
 
+    @Operation(
+            summary = "Lấy danh sách người đã thả cảm xúc",
+            description = """
+                     Lấy danh sách cảm xúc theo từng người dùng của tin nhắn (có phân trang), cảm xúc mới nhất đứng đầu. Tin nhắn chỉ chứa tổng số cảm xúc theo từng loại `reactionCounts` và tối đa 3 người thả cảm xúc gần nhất `recentReactors`
+                                       
+                    <strong>⚠️ Vui lòng không xử lý các lỗi dưới đây phía client. Các lỗi này chỉ đóng vai trò bảo vệ API khỏi các lỗi cố tình.⚠️</strong>
+                                       
+                     <strong>Forbidden: </strong>
+                     - Bạn không phải là thành viên của phòng chat này
+                     
+                     <strong>Not Found: </strong>
+                     - Không tìm thấy ID phòng chat
+                     - Không tìm thấy tin nhắn
+                     """
+    )
+    @GetMapping("/{chat-id}/messages/{message-id}/reactions")
+    public Page<Reaction> getAllReactions(@PathVariable("message-id") String messageId, @PathVariable("chat-id") String chatId, @AuthenticationPrincipal UserPrincipal userPrincipal, @RequestParam(required = false, defaultValue = "0") int page, @RequestParam(required = false, defaultValue = "20") int size) {
+        return chatService.findReactions(messageId, chatId, userPrincipal, PageRequest.of(page, size));
+    }
+
     @Operation(
             summary = "Gửi tin nhắn",
             description = """
@@ -177,7 +298,7 @@ public class ChatController {
             description = """
                      Cập nhật trạng thái đã xem cho tin nhắn.
                      
-                     Cập nhật `lastSeenMessageId: "id"` thành message id cuối cùng
+                     Cập nhật `lastSeenMessageId: "id"` thành message id cuối cùng và đặt `unreadCount` của phòng chat về 0
                                        
                     <strong>⚠️ Vui lòng không xử lý các lỗi dưới đây phía client. Các lỗi này chỉ đóng vai trò bảo vệ API khỏi các lỗi cố tình.⚠️</strong>
                                        
@@ -6,7 +6,6 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -30,7 +29,6 @@ import java.util.List;
 @RequiredArgsConstructor
 public class GroupController {
     private final GroupService groupService;
-    private final ModelMapper modelMapper;
 
     @PutMapping("/{group_id}/members")
     @Operation(
@@ -149,7 +147,7 @@ public class GroupController {
     @GetMapping("/{group-id}")
     public GroupDTO getGroup(@PathVariable("group-id") String id) {
         Group group = groupService.findById(id);
-        return modelMapper.map(group, GroupDTO.class);
+        return GroupDTO.from(group);
     }
 
     @ResponseStatus(HttpStatus.NO_CONTENT)
@@ -6,12 +6,13 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 import vn.edu.iuh.dto.*;
-import vn.edu.iuh.models.Friend;
 import vn.edu.iuh.models.UserInfo;
 import vn.edu.iuh.models.enums.FriendStatus;
 import vn.edu.iuh.security.UserPrincipal;
@@ -30,7 +31,6 @@ import java.util.List;
 public class UserController {
     private final UserInfoService userInfoService;
     private final GroupService groupService;
-    private final ModelMapper modelMapper;
 
     @Operation(
             summary = "Lấy tất cả nhóm bạn bè đã tham gia",
@@ -85,7 +85,7 @@ public class UserController {
     )
     @GetMapping("/profile/search/recent")
     public List<UserInfo> getUserInfoRecentSearches(@AuthenticationPrincipal UserPrincipal userPrincipal, @RequestParam(defaultValue = "4") int size) {
-        List<UserInfo> userInfos = userInfoService.findUserInfoByUserId(userPrincipal.getId()).getRecentSearches();
+        List<UserInfo> userInfos = userInfoService.findRecentSearchesByUserId(userPrincipal.getId());
         return userInfos.subList(0, Math.min(size, userInfos.size()));
     }
 
@@ -238,15 +238,13 @@ public class UserController {
                     + sent: danh sách lời mời kết bạn đã gửi
                     + friend: danh sách bạn bè
                     + block: danh sách bị chặn
+                    
+                    Danh sách được sắp xếp theo tên hiển thị và phân trang bằng `page` và `size`
                     """
     )
     @GetMapping("/profile/friends")
-    public List<FriendDTO> getAllFriends(@AuthenticationPrincipal UserPrincipal userPrincipal, @RequestParam FriendTypeRequest type) {
-        List<Friend> friends = userInfoService.findUserInfo(userPrincipal.getUsername()).getFriends();
-        return friends.stream()
-                .filter(friend -> friend.getStatus().equals(mapToFriendStatus(type)))
-                .map(friend -> modelMapper.map(friend, FriendDTO.class))
-                .toList();
+    public Page<FriendDTO> getAllFriends(@AuthenticationPrincipal UserPrincipal userPrincipal, @RequestParam FriendTypeRequest type, @RequestParam(required = false, defaultValue = "0") int page, @RequestParam(required = false, defaultValue = "20") int size) {
+        return userInfoService.findFriendsByUserId(userPrincipal.getId(), mapToFriendStatus(type), PageRequest.of(page, size));
     }
 
     private FriendStatus mapToFriendStatus(FriendTypeRequest type) {
@@ -274,11 +272,31 @@ public class UserController {
             summary = "Lấy danh sách phòng chat",
             description = """
                     Lấy danh sách phòng chat. Cả chat đơn và chat nhóm
+                    
+                    Mỗi phòng chat có `version` tăng dần mỗi khi phòng chat thay đổi (tin nhắn mới, đổi trạng thái, đổi tên nhóm...).
+                    Truyền `since` bằng `version` lớn nhất client đang giữ để chỉ lấy các phòng chat thay đổi sau lần đồng bộ trước
+                    (bao gồm cả các phòng chat có `status = DELETED` để client xóa khỏi danh sách)
+                    
+                    Truyền `page` và `size` để phân trang: các phòng chat đã ghim đứng đầu danh sách và được tính vào `size`, các
+                    phòng chat còn lại được sắp xếp theo thời gian tin nhắn cuối mới nhất. Kết quả có `totalElements` và `last` để
+                    biết còn trang sau hay không. Không truyền `page` thì trả về toàn bộ danh sách trong một trang
                     """
     )
     @GetMapping("/profile/chats")
-    public List<ChatRoomDTO> getAllChats(@AuthenticationPrincipal UserPrincipal userPrincipal) {
-        return userInfoService.getAllChats(userPrincipal);
+    public Page<ChatRoomDTO> getAllChats(@AuthenticationPrincipal UserPrincipal userPrincipal, @RequestParam(required = false) Long since, @RequestParam(required = false) Integer page, @RequestParam(required = false, defaultValue = "20") int size) {
+        Pageable pageable = page == null ? Pageable.unpaged() : PageRequest.of(page, size);
+        return userInfoService.getAllChats(userPrincipal, since, pageable);
+    }
+
+    @Operation(
+            summary = "Tổng số tin nhắn chưa đọc",
+            description = """
+                    Tổng số tin nhắn chưa đọc của tất cả phòng chat (không tính các phòng chat đã xóa). Số tin nhắn chưa đọc của từng phòng chat nằm ở `unreadCount` trong danh sách phòng chat
+                    """
+    )
+    @GetMapping("/profile/chats/unread")
+    public int countUnreadMessages(@AuthenticationPrincipal UserPrincipal userPrincipal) {
+        return userInfoService.countUnreadMessages(userPrincipal);
     }
 
     @Operation(
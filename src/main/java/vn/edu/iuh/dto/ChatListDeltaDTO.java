@@ -0,0 +1,17 @@
+package vn.edu.iuh.dto;
+
+import lombok.*;
+import vn.edu.iuh.models.MessageSummary;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+@ToString
+public class ChatListDeltaDTO {
+    private String chatId;
+    private MessageSummary lastMessage;
+    private int unreadCount;
+    private long version;
+}
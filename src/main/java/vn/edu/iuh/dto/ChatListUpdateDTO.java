@@ -0,0 +1,19 @@
+package vn.edu.iuh.dto;
+
+import lombok.*;
+import vn.edu.iuh.models.enums.NotificationType;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+public class ChatListUpdateDTO {
+    @Builder.Default
+    private NotificationType type = NotificationType.CHAT_LIST_UPDATED;
+    private List<ChatListDeltaDTO> chats;
+    private LocalDateTime timestamp;
+}
@@ -2,7 +2,8 @@ package vn.edu.iuh.dto;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.*;
-import vn.edu.iuh.models.LastMessage;
+import vn.edu.iuh.models.MessageSummary;
+import vn.edu.iuh.models.UserChat;
 import vn.edu.iuh.models.enums.UserChatStatus;
 
 @AllArgsConstructor
@@ -12,7 +13,7 @@ import vn.edu.iuh.models.enums.UserChatStatus;
 @Builder
 public class ChatRoomDTO {
     private String id;
-    private LastMessage lastMessage;
+    private MessageSummary lastMessage;
     private String name;
     private String avatar;
     @JsonProperty("isGroup")
@@ -20,4 +21,21 @@ public class ChatRoomDTO {
     private String groupId;
     private UserChatStatus status;
     private String lastSeenMessageId;
+    private int unreadCount;
+    private long version;
+
+    public static ChatRoomDTO from(UserChat userChat) {
+        return ChatRoomDTO.builder()
+                .id(userChat.getChatId())
+                .name(userChat.getName())
+                .avatar(userChat.getAvatar())
+                .lastMessage(userChat.getLastMessage())
+                .isGroup(userChat.getGroupId() != null)
+                .groupId(userChat.getGroupId())
+                .lastSeenMessageId(userChat.getLastSeenMessageId())
+                .status(userChat.getStatus())
+                .unreadCount(userChat.getUnreadCount())
+                .version(userChat.getVersion())
+                .build();
+    }
 }
@@ -0,0 +1,19 @@
+package vn.edu.iuh.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * One page of a list read newest first. Pass {@code nextCursor} back as the cursor to read the following page
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+public class CursorPageDTO<T> {
+    private List<T> content;
+    private String nextCursor;
+    private boolean hasNext;
+}
@@ -2,6 +2,7 @@ package vn.edu.iuh.dto;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.*;
+import vn.edu.iuh.models.Friend;
 import vn.edu.iuh.models.UserInfo;
 import vn.edu.iuh.models.enums.FriendStatus;
 @Getter
@@ -19,4 +20,13 @@ public class FriendDTO {
     @Builder.Default
     private boolean isBestFriend = false;
 
+    public static FriendDTO from(Friend friend) {
+        return FriendDTO.builder()
+                .profile(friend.getProfile())
+                .displayName(friend.getDisplayName())
+                .status(friend.getStatus())
+                .chatId(friend.getChatId())
+                .isBestFriend(friend.isBestFriend())
+                .build();
+    }
 }
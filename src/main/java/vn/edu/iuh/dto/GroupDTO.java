@@ -1,6 +1,7 @@
 package vn.edu.iuh.dto;
 
 import lombok.*;
+import vn.edu.iuh.models.Group;
 
 import java.time.LocalDateTime;
 
@@ -16,4 +17,15 @@ public class GroupDTO {
     private String chatId;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+
+    public static GroupDTO from(Group group) {
+        return new GroupDTO(
+                group.getId(),
+                group.getName(),
+                group.getThumbnailAvatar(),
+                group.getChatId(),
+                group.getCreatedAt(),
+                group.getUpdatedAt()
+        );
+    }
 }
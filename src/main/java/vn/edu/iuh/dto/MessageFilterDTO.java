@@ -0,0 +1,20 @@
+package vn.edu.iuh.dto;
+
+import lombok.*;
+import vn.edu.iuh.models.enums.AttachmentType;
+
+import java.time.LocalDateTime;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+public class MessageFilterDTO {
+    private String senderId;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private AttachmentType attachmentType;
+    private String cursor;
+    private int size;
+}
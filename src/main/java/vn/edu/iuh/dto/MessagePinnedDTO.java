@@ -0,0 +1,22 @@
+package vn.edu.iuh.dto;
+
+import lombok.*;
+import vn.edu.iuh.models.Message;
+import vn.edu.iuh.models.enums.ChatEventType;
+
+/**
+ * A message was pinned or unpinned. {@code notice} is the event message appended to the chat for it
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+public class MessagePinnedDTO {
+    @Builder.Default
+    private ChatEventType type = ChatEventType.MESSAGE_PINNED;
+    private String messageId;
+    private boolean pinned;
+    private String userId;
+    private Message notice;
+}
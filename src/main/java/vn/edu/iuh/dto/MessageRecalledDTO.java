@@ -0,0 +1,16 @@
+package vn.edu.iuh.dto;
+
+import lombok.*;
+import vn.edu.iuh.models.enums.ChatEventType;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+public class MessageRecalledDTO {
+    @Builder.Default
+    private ChatEventType type = ChatEventType.MESSAGE_RECALLED;
+    private String messageId;
+    private String content;
+}
@@ -0,0 +1,22 @@
+package vn.edu.iuh.dto;
+
+import lombok.*;
+import vn.edu.iuh.models.UserSummary;
+
+import java.time.LocalDateTime;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+public class MessageSearchHitDTO {
+    private String chatId;
+    private String chatName;
+    private String chatAvatar;
+    private String messageId;
+    private UserSummary sender;
+    private String snippet;
+    private LocalDateTime createdAt;
+    private float score;
+}
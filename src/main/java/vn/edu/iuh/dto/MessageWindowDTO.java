@@ -0,0 +1,17 @@
+package vn.edu.iuh.dto;
+
+import lombok.*;
+import vn.edu.iuh.models.Message;
+
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+public class MessageWindowDTO {
+    private List<Message> messages;
+    private boolean hasOlder;
+    private boolean hasNewer;
+}
@@ -3,6 +3,7 @@ package vn.edu.iuh.dto;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import lombok.*;
+import vn.edu.iuh.projections.ProfileCard;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -25,4 +26,19 @@ public class OtherUserInfoDTO {
     private boolean gender;
     private LocalDate birthday;
     private LocalDateTime createdAt;
+
+    public static OtherUserInfoDTO from(ProfileCard profile, String phone) {
+        return new OtherUserInfoDTO(
+                profile.getId(),
+                phone,
+                profile.getFirstName(),
+                profile.getLastName(),
+                profile.getBio(),
+                profile.getThumbnailAvatar(),
+                profile.getCoverImage(),
+                profile.isGender(),
+                profile.getBirthday(),
+                profile.getCreatedAt()
+        );
+    }
 }
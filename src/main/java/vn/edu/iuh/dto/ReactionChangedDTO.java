@@ -0,0 +1,26 @@
+package vn.edu.iuh.dto;
+
+import lombok.*;
+import vn.edu.iuh.models.enums.ChatEventType;
+import vn.edu.iuh.models.enums.ReactionType;
+
+import java.util.Map;
+
+/**
+ * Reaction of one user on a message changed. {@code reactionType} is null and {@code quantity} is 0 when the user
+ * removed all of their reactions. {@code reactionCounts} are the counters of the message after the change
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Builder
+public class ReactionChangedDTO {
+    @Builder.Default
+    private ChatEventType type = ChatEventType.REACTION_CHANGED;
+    private String messageId;
+    private String userId;
+    private ReactionType reactionType;
+    private int quantity;
+    private Map<ReactionType, Integer> reactionCounts;
+}
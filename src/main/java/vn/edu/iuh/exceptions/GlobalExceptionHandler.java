@@ -3,6 +3,7 @@ package vn.edu.iuh.exceptions;
 import io.jsonwebtoken.ExpiredJwtException;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
@@ -97,6 +98,18 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
                 .build();
     }
 
+    @ExceptionHandler({OptimisticLockingFailureException.class})
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public ErrorResponseDTO handleOptimisticLockingFailureException(RuntimeException exception) {
+        return ErrorResponseDTO
+                .builder()
+                .timestamp(LocalDateTime.now())
+                .status(HttpStatus.CONFLICT.value())
+                .error(HttpStatus.CONFLICT.getReasonPhrase())
+                .detail("Phòng chat vừa được cập nhật, vui lòng thử lại")
+                .build();
+    }
+
     @ExceptionHandler({OTPMismatchException.class})
     @ResponseStatus(HttpStatus.CONFLICT)
     public String handleOTPMismatchException(RuntimeException exception) {
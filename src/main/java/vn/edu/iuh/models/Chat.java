@@ -2,16 +2,21 @@ package vn.edu.iuh.models;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
+import org.bson.types.ObjectId;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.DocumentReference;
 import org.springframework.data.mongodb.core.mapping.Field;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Document(collection = "chats")
 @Builder
@@ -34,12 +39,62 @@ public class Chat {
     @Builder.Default
     private List<UserInfo> members = new ArrayList<>();
     private LastMessage lastMessage;
+    @JsonIgnore
+    @Field("pinned_message_ids")
     @Builder.Default
-    private List<Message> pinnedMessages = new ArrayList<>();
+    private List<ObjectId> pinnedMessageIds = new ArrayList<>();
     @Builder.Default
     private List<String> deleteBy = new ArrayList<>();
     @CreatedDate
     private LocalDateTime createdAt;
     @LastModifiedDate
     private LocalDateTime updatedAt;
+    /**
+     * Raised by every save and by the background jobs that take messages out, so a save of a chat loaded before such a
+     * job fails instead of putting the messages back
+     */
+    @Version
+    @JsonIgnore
+    private Long version;
+    @Transient
+    @JsonIgnore
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Map<String, Integer> messageIndexes;
+
+    public void setMessages(List<Message> messages) {
+        this.messages = messages;
+        this.messageIndexes = null;
+    }
+
+    /**
+     * @return position of the message in {@link #messages} or -1. Messages are only appended, so the index is
+     * extended with the new ones instead of being rebuilt
+     */
+    public synchronized int indexOfMessage(String messageId) {
+        if (messageIndexes == null) {
+            messageIndexes = new HashMap<>();
+        }
+        for (int i = messageIndexes.size(); i < messages.size(); i++) {
+            messageIndexes.put(messages.get(i).getMessageId(), i);
+        }
+        return messageIndexes.getOrDefault(messageId, -1);
+    }
+
+    public boolean isPinned(String messageId) {
+        return pinnedMessageIds.contains(new ObjectId(messageId));
+    }
+
+    /**
+     * Pinned messages looked up in {@link #messages}, so a recalled or edited message is shown as it currently is
+     */
+    @Transient
+    public List<Message> getPinnedMessages() {
+        return pinnedMessageIds.stream()
+                .map(id -> indexOfMessage(id.toString()))
+                .filter(index -> index >= 0)
+                .map(messages::get)
+                .toList();
+    }
 }
@@ -0,0 +1,69 @@
+package vn.edu.iuh.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import vn.edu.iuh.models.enums.AttachmentType;
+import vn.edu.iuh.utils.ReferenceUtil;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Attachment copied out of its message for the media and file gallery of a chat. The ID is the message ID followed by
+ * the position of the attachment, so IDs sort newest first like the messages and serve as the cursor
+ */
+@Document(collection = "chat_attachments")
+@CompoundIndexes({
+        @CompoundIndex(name = "chat_id_desc", def = "{'chat_id': 1, '_id': -1}"),
+        @CompoundIndex(name = "chat_type_id_desc", def = "{'chat_id': 1, 'type': 1, '_id': -1}")
+})
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class ChatAttachment {
+    @Id
+    private String id;
+    @JsonIgnore
+    private String chatId;
+    @Indexed
+    private String messageId;
+    private String senderId;
+    private AttachmentType type;
+    private String url;
+    private String filename;
+    @JsonIgnore
+    @Builder.Default
+    private List<String> deleteBy = new ArrayList<>();
+    private LocalDateTime createdAt;
+
+    public static List<ChatAttachment> from(String chatId, Message message) {
+        List<ChatAttachment> attachments = new ArrayList<>();
+        if (message.getAttachments() == null) {
+            return attachments;
+        }
+        for (int i = 0; i < message.getAttachments().size(); i++) {
+            Attachment attachment = message.getAttachments().get(i);
+            attachments.add(ChatAttachment.builder()
+                    .id(String.format("%s-%02d", message.getMessageId(), i))
+                    .chatId(chatId)
+                    .messageId(message.getMessageId())
+                    .senderId(ReferenceUtil.idOf(message.getSender()))
+                    .type(attachment.getType())
+                    .url(attachment.getUrl())
+                    .filename(attachment.getFilename())
+                    .deleteBy(new ArrayList<>(ReferenceUtil.idsOf(message.getDeleteBy())))
+                    .createdAt(message.getCreatedAt())
+                    .build());
+        }
+        return attachments;
+    }
+}
@@ -0,0 +1,19 @@
+package vn.edu.iuh.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Document("counters")
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class Counter {
+    @Id
+    private String id;
+    private long seq;
+}
@@ -3,11 +3,24 @@ package vn.edu.iuh.models;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.*;
-import org.springframework.context.annotation.Lazy;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.convert.LazyLoadingProxy;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.DocumentReference;
 import org.springframework.data.mongodb.core.mapping.Field;
 import vn.edu.iuh.models.enums.FriendStatus;
 
+/**
+ * Directed friendship edge, each relationship is stored once for each side
+ */
+@Document("friends")
+@CompoundIndexes({
+        @CompoundIndex(name = "owner_friend", def = "{'owner_id': 1, 'friend_id': 1}", unique = true),
+        @CompoundIndex(name = "owner_status_display_name", def = "{'owner_id': 1, 'status': 1, 'display_name': 1}")
+})
 @Getter
 @Setter
 @ToString
@@ -15,6 +28,14 @@ import vn.edu.iuh.models.enums.FriendStatus;
 @AllArgsConstructor
 @Builder
 public class Friend {
+    @Id
+    @JsonIgnore
+    private String id;
+    @JsonIgnore
+    @ToString.Exclude
+    @DocumentReference(lazy = true, collection = "user_info")
+    @Field("owner_id")
+    private UserInfo owner;
     @DocumentReference(lazy = true, collection = "user_info")
     @Field("friend_id")
     private UserInfo profile;
@@ -29,9 +50,16 @@ public class Friend {
     @Builder.Default
     private boolean isBestFriend = false;
 
-    public Friend(UserInfo profile, String displayName, FriendStatus status) {
-        this.profile = profile;
-        this.displayName = displayName;
-        this.status = status;
+    /**
+     * ID of the chat without resolving the lazy reference
+     */
+    @Transient
+    @JsonIgnore
+    public String getChatId() {
+        if (chat instanceof LazyLoadingProxy proxy) {
+            Object source = proxy.getSource();
+            return source == null ? null : source.toString();
+        }
+        return chat == null ? null : chat.getId();
     }
 }
@@ -5,6 +5,8 @@ import lombok.*;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.convert.LazyLoadingProxy;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.DocumentReference;
 import org.springframework.data.mongodb.core.mapping.Field;
@@ -39,4 +41,16 @@ public class Group {
     private LocalDateTime updatedAt;
     @Builder.Default
     private GroupStatus status = GroupStatus.ACTIVE;
+
+    /**
+     * ID of the chat without resolving the lazy reference
+     */
+    @Transient
+    public String getChatId() {
+        if (chat instanceof LazyLoadingProxy proxy) {
+            Object source = proxy.getSource();
+            return source == null ? null : source.toString();
+        }
+        return chat == null ? null : chat.getId();
+    }
 }
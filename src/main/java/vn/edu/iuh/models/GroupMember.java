@@ -1,9 +1,12 @@
 package vn.edu.iuh.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.mapping.DocumentReference;
 import org.springframework.data.mongodb.core.mapping.Field;
 import vn.edu.iuh.models.enums.GroupMemberRole;
+import vn.edu.iuh.utils.ReferenceUtil;
 
 @Getter
 @Setter
@@ -18,4 +21,13 @@ public class GroupMember {
     private UserInfo profile;
     private GroupMemberRole role;
     private String joinMethod;
+
+    /**
+     * ID of the member without resolving the lazy reference
+     */
+    @Transient
+    @JsonIgnore
+    public String getProfileId() {
+        return ReferenceUtil.idOf(profile);
+    }
 }
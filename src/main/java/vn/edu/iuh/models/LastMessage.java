@@ -1,12 +1,13 @@
 package vn.edu.iuh.models;
 
-import com.fasterxml.jackson.annotation.JsonIncludeProperties;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.mongodb.core.mapping.DocumentReference;
 import org.springframework.data.mongodb.core.mapping.Field;
+import vn.edu.iuh.config.UserSummarySerializer;
 
 import java.time.LocalDateTime;
 
@@ -18,8 +19,8 @@ public class LastMessage {
     private String messageId;
     private String content;
     @Field("sender_id")
-    @DocumentReference
-    @JsonIncludeProperties({"id", "firstName", "lastName", "thumbnailAvatar", "gender"})
+    @DocumentReference(lazy = true)
+    @JsonSerialize(using = UserSummarySerializer.class)
     private UserInfo sender;
     private LocalDateTime createdAt;
 }
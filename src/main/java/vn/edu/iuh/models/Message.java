@@ -1,17 +1,24 @@
 package vn.edu.iuh.models;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.fasterxml.jackson.annotation.JsonIncludeProperties;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.*;
 import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.mongodb.core.mapping.DocumentReference;
 import org.springframework.data.mongodb.core.mapping.Field;
+import vn.edu.iuh.config.UserSummarySerializer;
 import vn.edu.iuh.models.enums.MessageStatus;
 import vn.edu.iuh.models.enums.MessageType;
+import vn.edu.iuh.models.enums.ReactionType;
+import vn.edu.iuh.utils.ReferenceUtil;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Getter
 @Setter
@@ -23,17 +30,27 @@ import java.util.List;
 public class Message {
     private ObjectId messageId;
     private ObjectId replyMessageId;
+    @Transient
+    private ReplyPreview replyPreview;
     @Builder.Default
     private MessageType type = MessageType.MESSAGE;
     @DocumentReference(lazy = true)
     @Field("sender_id")
-    @JsonIncludeProperties({"id", "firstName", "lastName", "thumbnailAvatar", "gender"})
+    @JsonSerialize(using = UserSummarySerializer.class)
     private UserInfo sender;
     private String content;
     private List<Attachment> attachments;
+    @JsonIgnore
     @Builder.Default
     private List<Reaction> reactions = new ArrayList<>();
     @Builder.Default
+    private Map<ReactionType, Integer> reactionCounts = new HashMap<>();
+    @DocumentReference(lazy = true)
+    @Field("recent_reactor_ids")
+    @JsonSerialize(contentUsing = UserSummarySerializer.class)
+    @Builder.Default
+    private List<UserInfo> recentReactors = new ArrayList<>();
+    @Builder.Default
     private MessageStatus status = MessageStatus.SENT;
     private LocalDateTime createdAt;
     @Builder.Default
@@ -43,6 +60,36 @@ public class Message {
     @Builder.Default
     private List<UserInfo> deleteBy = new ArrayList<>();
 
+    /**
+     * Copy whose lists and reactions can be changed without touching this message. Profiles in lists are copied as
+     * ID-only references so lazy references are not resolved
+     */
+    public Message copy() {
+        return Message.builder()
+                .messageId(messageId)
+                .replyMessageId(replyMessageId)
+                .type(type)
+                .sender(sender)
+                .content(content)
+                .attachments(attachments == null ? null : new ArrayList<>(attachments))
+                .reactions(reactions == null ? null : reactions.stream()
+                        .map(reaction -> new Reaction(reaction.getUser(), reaction.getType(), reaction.getQuantity()))
+                        .collect(Collectors.toCollection(ArrayList::new)))
+                .reactionCounts(reactionCounts == null ? null : new HashMap<>(reactionCounts))
+                .recentReactors(references(recentReactors))
+                .status(status)
+                .createdAt(createdAt)
+                .updatedAt(updatedAt)
+                .deleteBy(references(deleteBy))
+                .build();
+    }
+
+    private static List<UserInfo> references(List<UserInfo> userInfos) {
+        return userInfos == null ? null : ReferenceUtil.idsOf(userInfos).stream()
+                .map(ReferenceUtil::reference)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
     public String getMessageId() {
         return messageId.toString();
     }
@@ -0,0 +1,50 @@
+package vn.edu.iuh.models;
+
+import lombok.*;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Segment of old messages moved out of a chat, stored as one gzip compressed BSON array in {@code payload}. Segments
+ * of a chat never overlap and hold consecutive messages, so {@code first_message_id} and {@code last_message_id} tell
+ * which segment holds a message. The counts let history pages be counted without reading the payload
+ */
+@Document(collection = "message_archives")
+@CompoundIndex(name = "chat_last_message_id", def = "{'chat_id': 1, 'last_message_id': -1}")
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString(exclude = "payload")
+public class MessageArchive {
+    @Id
+    private String id;
+    private String chatId;
+    private ObjectId firstMessageId;
+    private ObjectId lastMessageId;
+    private LocalDateTime firstCreatedAt;
+    private LocalDateTime lastCreatedAt;
+    private int count;
+    /**
+     * Number of messages of the segment each user deleted, by profile ID
+     */
+    @Builder.Default
+    private Map<String, Integer> deleteCounts = new HashMap<>();
+    private long size;
+    private long compressedSize;
+    private byte[] payload;
+    private LocalDateTime archivedAt;
+    /**
+     * Raised on every rewrite of the payload, so two rewrites of one segment cannot overwrite each other
+     */
+    @Version
+    private Long version;
+}
@@ -0,0 +1,37 @@
+package vn.edu.iuh.models;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Denormalized copy of {@link LastMessage} whose sender is embedded instead of referenced
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@ToString
+public class MessageSummary {
+    private String messageId;
+    private String content;
+    private UserSummary sender;
+    private LocalDateTime createdAt;
+
+    public static MessageSummary from(LastMessage lastMessage) {
+        if (lastMessage == null) {
+            return null;
+        }
+        return from(lastMessage, UserSummary.from(lastMessage.getSender()));
+    }
+
+    public static MessageSummary from(LastMessage lastMessage, UserSummary sender) {
+        return MessageSummary.builder()
+                .messageId(lastMessage.getMessageId())
+                .content(lastMessage.getContent())
+                .sender(sender)
+                .createdAt(lastMessage.getCreatedAt())
+                .build();
+    }
+}
@@ -1,9 +1,10 @@
 package vn.edu.iuh.models;
 
-import com.fasterxml.jackson.annotation.JsonIncludeProperties;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import lombok.*;
 import org.springframework.data.mongodb.core.mapping.DocumentReference;
 import org.springframework.data.mongodb.core.mapping.Field;
+import vn.edu.iuh.config.UserSummarySerializer;
 import vn.edu.iuh.models.enums.ReactionType;
 @Getter
 @Setter
@@ -12,9 +13,9 @@ import vn.edu.iuh.models.enums.ReactionType;
 @EqualsAndHashCode(of = {"user", "type"})
 @ToString
 public class Reaction {
-    @DocumentReference
+    @DocumentReference(lazy = true)
     @Field("user_id")
-    @JsonIncludeProperties({"id", "firstName", "lastName", "thumbnailAvatar", "gender"})
+    @JsonSerialize(using = UserSummarySerializer.class)
     private UserInfo user;
     private ReactionType type;
     private int quantity;
@@ -0,0 +1,23 @@
+package vn.edu.iuh.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.*;
+import vn.edu.iuh.models.enums.AttachmentType;
+
+/**
+ * Compact copy of a quoted message shown above a reply
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder(toBuilder = true)
+@ToString
+public class ReplyPreview {
+    private String messageId;
+    @JsonIgnore
+    private String senderId;
+    private UserSummary sender;
+    private String content;
+    private AttachmentType attachmentType;
+}
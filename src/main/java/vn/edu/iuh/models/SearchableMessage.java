@@ -0,0 +1,73 @@
+package vn.edu.iuh.models;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.TextIndexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.TextScore;
+import vn.edu.iuh.models.enums.AttachmentType;
+import vn.edu.iuh.utils.ReferenceUtil;
+import vn.edu.iuh.utils.TextUtil;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Message copied out of its chat so it can be found without reading the chat: by text across all conversations, and
+ * by words, sender, time or attachment type inside one chat. {@code text} is the folded content indexed without stemming,
+ * the original content is kept for snippets. Message IDs grow with time, so {@code _id} doubles as the time order
+ */
+@Document(collection = "searchable_messages", language = "none")
+@CompoundIndexes({
+        @CompoundIndex(name = "chat_id_desc", def = "{'chat_id': 1, '_id': -1}"),
+        @CompoundIndex(name = "chat_sender_id_desc", def = "{'chat_id': 1, 'sender_id': 1, '_id': -1}"),
+        @CompoundIndex(name = "chat_attachment_type_id_desc", def = "{'chat_id': 1, 'attachment_types': 1, '_id': -1}"),
+        @CompoundIndex(name = "chat_tokens_id_desc", def = "{'chat_id': 1, 'tokens': 1, '_id': -1}")
+})
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class SearchableMessage {
+    @Id
+    private String id;
+    private String chatId;
+    private String senderId;
+    private String content;
+    @Builder.Default
+    private List<AttachmentType> attachmentTypes = new ArrayList<>();
+    @TextIndexed
+    private String text;
+    /**
+     * Distinct folded words, to find the messages of one chat holding every word of a query
+     */
+    private List<String> tokens;
+    @Builder.Default
+    private List<String> deleteBy = new ArrayList<>();
+    private LocalDateTime createdAt;
+    @TextScore
+    private Float score;
+
+    public static SearchableMessage from(String chatId, Message message) {
+        return SearchableMessage.builder()
+                .id(message.getMessageId())
+                .chatId(chatId)
+                .senderId(ReferenceUtil.idOf(message.getSender()))
+                .content(message.getContent())
+                .text(TextUtil.fold(message.getContent()))
+                .tokens(TextUtil.tokenize(message.getContent()))
+                .attachmentTypes(message.getAttachments() == null ? new ArrayList<>() : message.getAttachments().stream()
+                        .map(Attachment::getType)
+                        .distinct()
+                        .collect(Collectors.toCollection(ArrayList::new)))
+                .deleteBy(new ArrayList<>(ReferenceUtil.idsOf(message.getDeleteBy())))
+                .createdAt(message.getCreatedAt())
+                .build();
+    }
+}
@@ -1,26 +1,84 @@
 package vn.edu.iuh.models;
 
 import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.convert.LazyLoadingProxy;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.DocumentReference;
 import org.springframework.data.mongodb.core.mapping.Field;
 import vn.edu.iuh.models.enums.UserChatStatus;
 
 import java.time.LocalDateTime;
 
+@Document("user_chats")
+@CompoundIndexes({
+        @CompoundIndex(name = "user_status_last_message_at", def = "{'user_id': 1, 'status': 1, 'last_message_at': -1}"),
+        @CompoundIndex(name = "user_chat", def = "{'user_id': 1, 'chat_id': 1}", unique = true),
+        @CompoundIndex(name = "user_version", def = "{'user_id': 1, 'version': 1}"),
+        @CompoundIndex(name = "chat_id", def = "{'chat_id': 1}"),
+        @CompoundIndex(name = "peer_id", def = "{'peer_id': 1}", sparse = true),
+        @CompoundIndex(name = "last_message_sender", def = "{'last_message.sender._id': 1}", sparse = true)
+})
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
 @Getter
 @Setter
 @ToString
-@EqualsAndHashCode(of = "chat")
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
 public class UserChat {
-    @DocumentReference
+    @Id
+    private String id;
+    @DocumentReference(lazy = true)
+    @Field("user_id")
+    @ToString.Exclude
+    private UserInfo user;
+    @DocumentReference(lazy = true)
     @Field("chat_id")
+    @ToString.Exclude
     private Chat chat;
     @Builder.Default
     private UserChatStatus status = UserChatStatus.NORMAL;
     private String lastSeenMessageId;
     private LocalDateTime lastDeleteChatTime;
     private LocalDateTime joinTime;
+    private long version;
+    private int unreadCount;
+    // summary used to render the chat list without resolving the chat, its group or its members
+    private String name;
+    private String avatar;
+    private String groupId;
+    private String peerId;
+    private MessageSummary lastMessage;
+    private LocalDateTime lastMessageAt;
+
+    /**
+     * ID of the chat without resolving the lazy reference
+     */
+    @Transient
+    @EqualsAndHashCode.Include
+    public String getChatId() {
+        return chat instanceof LazyLoadingProxy ? referenceId(chat) : chat == null ? null : chat.getId();
+    }
+
+    /**
+     * ID of the owner without resolving the lazy reference
+     */
+    @Transient
+    @EqualsAndHashCode.Include
+    public String getUserId() {
+        return user instanceof LazyLoadingProxy ? referenceId(user) : user == null ? null : user.getId();
+    }
+
+    public boolean hasSummary() {
+        return groupId != null || peerId != null;
+    }
+
+    private static String referenceId(Object proxy) {
+        Object source = ((LazyLoadingProxy) proxy).getSource();
+        return source == null ? null : source.toString();
+    }
 }
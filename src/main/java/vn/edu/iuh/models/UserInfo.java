@@ -38,9 +38,6 @@ public class UserInfo {
     @JsonIgnore
     @ToString.Exclude
     private List<Group> groups = new ArrayList<>();
-    @JsonIgnore
-    @ToString.Exclude
-    private List<Friend> friends = new ArrayList<>();
     @CreatedDate
     private LocalDateTime createdAt;
     @LastModifiedDate
@@ -50,10 +47,6 @@ public class UserInfo {
     @DocumentReference(lazy = true, collection = "users")
     private User user;
 
-    @ToString.Exclude
-    @JsonIgnore
-    private List<UserChat> chats = new ArrayList<>();
-
     @JsonIgnore
     @DocumentReference(lazy = true)
     private List<UserInfo> recentSearches = new ArrayList<>();
@@ -0,0 +1,35 @@
+package vn.edu.iuh.models;
+
+import lombok.*;
+
+/**
+ * Fields of a profile needed to render a sender or a chat row, embedded where a full {@link UserInfo} would be
+ * too expensive to resolve
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@ToString
+@EqualsAndHashCode(of = "id")
+public class UserSummary {
+    private String id;
+    private String firstName;
+    private String lastName;
+    private String thumbnailAvatar;
+    private boolean gender;
+
+    public static UserSummary from(UserInfo userInfo) {
+        if (userInfo == null) {
+            return null;
+        }
+        return UserSummary.builder()
+                .id(userInfo.getId())
+                .firstName(userInfo.getFirstName())
+                .lastName(userInfo.getLastName())
+                .thumbnailAvatar(userInfo.getThumbnailAvatar())
+                .gender(userInfo.isGender())
+                .build();
+    }
+}
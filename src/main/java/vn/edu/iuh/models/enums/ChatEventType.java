@@ -0,0 +1,13 @@
+package vn.edu.iuh.models.enums;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
+@Getter
+public enum ChatEventType {
+    REACTION_CHANGED("Cảm xúc của tin nhắn thay đổi"),
+    MESSAGE_RECALLED("Tin nhắn bị thu hồi"),
+    MESSAGE_PINNED("Tin nhắn được ghim hoặc bỏ ghim");
+    private final String description;
+}
@@ -17,6 +17,7 @@ public enum NotificationType {
     ADD_TO_GROUP("Được thêm vào nhóm"),
     REMOVED_FROM_GROUP("Bị xóa khỏi nhóm"),
     DELETED_GROUP("Nhóm bị giải tán"),
-    CREATED_GROUP("Nhóm mới tạo");
+    CREATED_GROUP("Nhóm mới tạo"),
+    CHAT_LIST_UPDATED("Danh sách phòng chat thay đổi");
     private final String description;
 }
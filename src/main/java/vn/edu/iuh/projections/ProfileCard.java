@@ -0,0 +1,31 @@
+package vn.edu.iuh.projections;
+
+import vn.edu.iuh.models.User;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Public fields of a profile, without friends, groups and recent searches
+ */
+public interface ProfileCard {
+    String getId();
+
+    String getFirstName();
+
+    String getLastName();
+
+    String getBio();
+
+    String getThumbnailAvatar();
+
+    String getCoverImage();
+
+    boolean isGender();
+
+    LocalDate getBirthday();
+
+    LocalDateTime getCreatedAt();
+
+    User getUser();
+}
@@ -0,0 +1,9 @@
+package vn.edu.iuh.projections;
+
+import vn.edu.iuh.models.Group;
+
+import java.util.List;
+
+public interface UserInfoGroups {
+    List<Group> getGroups();
+}
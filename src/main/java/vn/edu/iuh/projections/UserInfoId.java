@@ -0,0 +1,8 @@
+package vn.edu.iuh.projections;
+
+/**
+ * Only the ID of a profile, enough for ownership and membership checks
+ */
+public interface UserInfoId {
+    String getId();
+}
@@ -0,0 +1,9 @@
+package vn.edu.iuh.projections;
+
+import vn.edu.iuh.models.UserInfo;
+
+import java.util.List;
+
+public interface UserInfoRecentSearches {
+    List<UserInfo> getRecentSearches();
+}
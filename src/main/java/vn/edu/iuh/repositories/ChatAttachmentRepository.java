@@ -0,0 +1,16 @@
+package vn.edu.iuh.repositories;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+import vn.edu.iuh.models.ChatAttachment;
+
+import java.util.Collection;
+
+@Repository
+public interface ChatAttachmentRepository extends MongoRepository<ChatAttachment, String>, ChatAttachmentRepositoryCustom {
+    void deleteAllByMessageId(String messageId);
+
+    void deleteAllByMessageIdIn(Collection<String> messageIds);
+
+    void deleteAllByChatId(String chatId);
+}
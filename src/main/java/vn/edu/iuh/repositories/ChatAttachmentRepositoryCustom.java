@@ -0,0 +1,32 @@
+package vn.edu.iuh.repositories;
+
+import vn.edu.iuh.models.ChatAttachment;
+import vn.edu.iuh.models.enums.AttachmentType;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface ChatAttachmentRepositoryCustom {
+    /**
+     * Attachments of one chat newest first, starting after {@code cursor}. At most {@code size + 1} attachments are
+     * returned so the caller can tell whether another page follows
+     *
+     * @param type   attachment type or null for every type
+     * @param after  time the caller cleared the chat history or null
+     * @param cursor ID of the last attachment of the previous page or null
+     */
+    List<ChatAttachment> findPage(String chatId, AttachmentType type, String userInfoId, LocalDateTime after, String cursor, int size);
+
+    /**
+     * Hide the attachments of a message from one user who deleted it
+     */
+    void addDeleteBy(String messageId, String userInfoId);
+
+    /**
+     * Copy the attachments of every message of every chat, archived ones included, into the collection, replacing the
+     * existing entries
+     *
+     * @return number of indexed attachments
+     */
+    long rebuild();
+}
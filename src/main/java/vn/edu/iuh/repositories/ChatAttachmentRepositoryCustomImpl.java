@@ -0,0 +1,98 @@
+package vn.edu.iuh.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import vn.edu.iuh.models.Chat;
+import vn.edu.iuh.models.ChatAttachment;
+import vn.edu.iuh.models.Message;
+import vn.edu.iuh.models.enums.AttachmentType;
+import vn.edu.iuh.models.enums.MessageStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class ChatAttachmentRepositoryCustomImpl implements ChatAttachmentRepositoryCustom {
+    private static final int REBUILD_BATCH_SIZE = 1000;
+    private final MongoTemplate mongoTemplate;
+    private final MessageArchiveRepository messageArchiveRepository;
+
+    @Override
+    public List<ChatAttachment> findPage(String chatId, AttachmentType type, String userInfoId, LocalDateTime after, String cursor, int size) {
+        Criteria criteria = Criteria.where("chat_id").is(chatId).and("delete_by").ne(userInfoId);
+        if (type != null) {
+            criteria.and("type").is(type.name());
+        }
+        if (after != null) {
+            criteria.and("created_at").gt(after);
+        }
+        if (cursor != null) {
+            criteria.and("_id").lt(cursor);
+        }
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "_id"))
+                .limit(size + 1);
+        return mongoTemplate.find(query, ChatAttachment.class);
+    }
+
+    @Override
+    public void addDeleteBy(String messageId, String userInfoId) {
+        mongoTemplate.updateMulti(
+                Query.query(Criteria.where("message_id").is(messageId)),
+                new Update().addToSet("delete_by", userInfoId),
+                ChatAttachment.class
+        );
+    }
+
+    @Override
+    public long rebuild() {
+        mongoTemplate.remove(new Query(), ChatAttachment.class);
+        Query query = Query.query(Criteria.where("messages.attachments.0").exists(true));
+        query.fields().include("_id", "messages");
+        Rebuild rebuild = new Rebuild();
+        try (var chats = mongoTemplate.stream(query, Chat.class)) {
+            chats.forEach(chat -> rebuild.index(chat.getId(), chat.getMessages()));
+        }
+        // archived messages stay in the media gallery
+        messageArchiveRepository.forEachSegment(rebuild::index);
+        return rebuild.finish();
+    }
+
+    /**
+     * Inserts of a rebuild, sent in batches of {@link #REBUILD_BATCH_SIZE}
+     */
+    private class Rebuild {
+        private BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ChatAttachment.class);
+        private int batch;
+        private long indexed;
+
+        void index(String chatId, List<Message> messages) {
+            for (Message message : messages) {
+                if (message.getStatus() == MessageStatus.UNSEND) {
+                    continue;
+                }
+                for (ChatAttachment attachment : ChatAttachment.from(chatId, message)) {
+                    bulkOperations.insert(attachment);
+                    indexed++;
+                    if (++batch == REBUILD_BATCH_SIZE) {
+                        bulkOperations.execute();
+                        bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ChatAttachment.class);
+                        batch = 0;
+                    }
+                }
+            }
+        }
+
+        long finish() {
+            if (batch > 0) {
+                bulkOperations.execute();
+            }
+            return indexed;
+        }
+    }
+}
@@ -11,7 +11,7 @@ import vn.edu.iuh.models.Chat;
 import java.util.Optional;
 
 @Repository
-public interface ChatRepository extends MongoRepository<Chat, String> {
+public interface ChatRepository extends MongoRepository<Chat, String>, ChatRepositoryCustom {
     @Cacheable(value = "chats", key = "#p0", condition = "#p0 != null")
     @Override
     Optional<Chat> findById(String s);
@@ -0,0 +1,171 @@
+package vn.edu.iuh.repositories;
+
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import vn.edu.iuh.models.Chat;
+import vn.edu.iuh.models.LastMessage;
+import vn.edu.iuh.models.Message;
+import vn.edu.iuh.models.Reaction;
+import vn.edu.iuh.models.enums.ReactionType;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public interface ChatRepositoryCustom {
+    /**
+     * Number of reactors kept in {@code recent_reactor_ids} of a message
+     */
+    int RECENT_REACTORS = 3;
+
+    /**
+     * Add {@code quantity} to the reaction of one user on a message and to the counter of its type, creating the
+     * reaction on the first tap. The user is put in front of the recent reactors when not already among them. Raises
+     * the chat version so a save of the chat loaded before the taps fails instead of dropping them
+     */
+    @CacheEvict(value = "chats", key = "#p0")
+    void addReaction(String chatId, String messageId, String userInfoId, ReactionType type, int quantity);
+
+    /**
+     * Remove every reaction of one user on a message and take their quantities off the counters, raising the chat
+     * version
+     */
+    @CacheEvict(value = "chats", key = "#p0")
+    void removeReactions(String chatId, String messageId, String userInfoId, Map<ReactionType, Integer> quantities);
+
+    /**
+     * Push a new message at the end of a chat and make it the last message, without reading or rewriting the other
+     * messages. Raises the chat version so a save of the chat loaded before cannot drop the message
+     *
+     * @param restore whether to clear the users who deleted the chat so it shows up again for them
+     */
+    @CacheEvict(value = "chats", key = "#p0")
+    void appendMessage(String chatId, Message message, LastMessage lastMessage, boolean restore);
+
+    /**
+     * @return one message of a chat, read without the rest of the chat document
+     */
+    Optional<Message> findMessage(String chatId, String messageId);
+
+    /**
+     * @return the messages of a chat with the given IDs in history order, read without the rest of the chat document
+     */
+    List<Message> findMessages(String chatId, Collection<String> messageIds);
+
+    /**
+     * Messages around one message of a chat, in history order: up to {@code count + 1} visible messages on each side
+     * of it so the caller can tell whether more follow. Messages the user deleted or sent before {@code after} are
+     * skipped before counting
+     *
+     * @return the window including the message itself, or an empty list when it is not visible
+     */
+    List<Message> findMessagesAround(String chatId, String messageId, String userInfoId, LocalDateTime after, int count);
+
+    /**
+     * @return the chat without its messages, for requests that only check membership
+     */
+    Optional<Chat> findHeader(String chatId);
+
+    /**
+     * @return the newest {@code count} messages of a chat in history order, sliced on the server
+     */
+    List<Message> findLatestMessages(String chatId, int count);
+
+    /**
+     * One page of the message history, skipping the messages the user deleted or sent before {@code after}. Pages are
+     * counted from the newest message, messages of a page are oldest first. Only the page is sent back by the server
+     */
+    Page<Message> findMessagePage(String chatId, String userInfoId, LocalDateTime after, Pageable pageable);
+
+    /**
+     * @return number of messages the user can see, counted on the server
+     */
+    long countMessages(String chatId, String userInfoId, LocalDateTime after);
+
+    /**
+     * @return IDs of at most {@code limit} chats whose oldest message was sent before {@code before}
+     */
+    List<String> findChatIdsWithMessagesBefore(LocalDateTime before, int limit);
+
+    /**
+     * Oldest messages of a chat sent before {@code before}, at most {@code limit}. The run stops at the first pinned
+     * message so the messages left in the chat stay newer than the returned ones
+     */
+    List<Message> findArchivableMessages(String chatId, LocalDateTime before, int limit);
+
+    /**
+     * Take messages out of a chat, used once they are archived
+     *
+     * @return number of updated chats
+     */
+    @CacheEvict(value = "chats", key = "#p0")
+    long removeMessages(String chatId, Collection<String> messageIds);
+
+    /**
+     * IDs of at most {@code limit} chats after {@code afterChatId} in ID order holding recalled messages sent before
+     * {@code recalledBefore} that still have a payload, or messages deleted by someone
+     *
+     * @param afterChatId ID the previous batch ended with or null to start over
+     */
+    List<String> findChatIdsToCompact(String afterChatId, LocalDateTime recalledBefore, int limit);
+
+    /**
+     * Clear the content, attachments, reactions and search words of the recalled messages sent before {@code before}
+     * and raise the chat version, so a save of the chat loaded before cannot bring them back
+     *
+     * @return number of updated chats
+     */
+    @CacheEvict(value = "chats", key = "#p0")
+    long stripRecalledMessages(String chatId, LocalDateTime before);
+
+    /**
+     * @return IDs of the messages of a chat deleted by every given user, pinned messages excluded
+     */
+    List<String> findMessageIdsDeletedByAll(String chatId, Collection<String> userInfoIds);
+
+    /**
+     * @return size in bytes of the stored chat document, or 0 when it does not exist
+     */
+    long findDocumentSize(String chatId);
+
+    /**
+     * Give a version to the chats stored before they had one, so saving them updates instead of inserting
+     *
+     * @return number of updated chats
+     */
+    @CacheEvict(value = "chats", allEntries = true)
+    long initVersions();
+
+    /**
+     * Remove the folded words once kept on embedded messages and their index, search reads
+     * {@code searchable_messages} instead
+     *
+     * @return number of updated chats
+     */
+    @CacheEvict(value = "chats", allEntries = true)
+    long dropSearchTokens();
+
+    /**
+     * @return one page of the per-user reactions of a message, newest first, sliced on the server
+     */
+    Page<Reaction> findReactions(String chatId, String messageId, Pageable pageable);
+
+    /**
+     * Fill the counters and recent reactors of messages reacted to before they existed
+     *
+     * @return number of updated chats
+     */
+    @CacheEvict(value = "chats", allEntries = true)
+    int backfillReactionCounts();
+
+    /**
+     * Replace the copies of pinned messages with their IDs
+     *
+     * @return number of updated chats
+     */
+    @CacheEvict(value = "chats", allEntries = true)
+    long migratePinnedMessages();
+}
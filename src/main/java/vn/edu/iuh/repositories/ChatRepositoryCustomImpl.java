@@ -0,0 +1,444 @@
+package vn.edu.iuh.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.Fields;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.support.PageableExecutionUtils;
+import vn.edu.iuh.models.Chat;
+import vn.edu.iuh.models.LastMessage;
+import vn.edu.iuh.models.Message;
+import vn.edu.iuh.models.Reaction;
+import vn.edu.iuh.models.enums.MessageStatus;
+import vn.edu.iuh.models.enums.ReactionType;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+@RequiredArgsConstructor
+public class ChatRepositoryCustomImpl implements ChatRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void addReaction(String chatId, String messageId, String userInfoId, ReactionType type, int quantity) {
+        ObjectId chat = new ObjectId(chatId);
+        ObjectId message = new ObjectId(messageId);
+        ObjectId user = new ObjectId(userInfoId);
+        Criteria reactionOfUser = Criteria.where("user_id").is(user).and("type").is(type.name());
+        Query existing = Query.query(Criteria.where("_id").is(chat)
+                .and("messages").elemMatch(Criteria.where("message_id").is(message).and("reactions").elemMatch(reactionOfUser)));
+        Update increase = new Update()
+                .inc("messages.$[message].reactions.$[reaction].quantity", quantity)
+                .inc("messages.$[message].reaction_counts." + type.name(), quantity)
+                .inc("version", 1)
+                .filterArray(Criteria.where("message.message_id").is(message))
+                .filterArray(Criteria.where("reaction.user_id").is(user).and("reaction.type").is(type.name()));
+        if (updateChat(existing, increase) == 0) {
+            Query absent = Query.query(Criteria.where("_id").is(chat)
+                    .and("messages").elemMatch(Criteria.where("message_id").is(message).and("reactions").not().elemMatch(reactionOfUser)));
+            Update create = new Update()
+                    .inc("messages.$.reaction_counts." + type.name(), quantity)
+                    .inc("version", 1)
+                    .push("messages.$.reactions").atPosition(Update.Position.FIRST)
+                    .value(new Document("user_id", user).append("type", type.name()).append("quantity", quantity));
+            // another tap may have created the reaction in between
+            if (updateChat(absent, create) == 0) {
+                updateChat(existing, increase);
+            }
+        }
+        Query notRecent = Query.query(Criteria.where("_id").is(chat)
+                .and("messages").elemMatch(Criteria.where("message_id").is(message).and("recent_reactor_ids").ne(user)));
+        updateChat(notRecent, new Update()
+                .inc("version", 1)
+                .push("messages.$.recent_reactor_ids").atPosition(Update.Position.FIRST).slice(RECENT_REACTORS).each(user));
+    }
+
+    @Override
+    public void removeReactions(String chatId, String messageId, String userInfoId, Map<ReactionType, Integer> quantities) {
+        ObjectId user = new ObjectId(userInfoId);
+        Update update = new Update()
+                .pull("messages.$.reactions", new Document("user_id", user))
+                .pull("messages.$.recent_reactor_ids", user)
+                .inc("version", 1);
+        quantities.forEach((type, quantity) -> update.inc("messages.$.reaction_counts." + type.name(), -quantity));
+        updateChat(Query.query(Criteria.where("_id").is(new ObjectId(chatId)).and("messages.message_id").is(new ObjectId(messageId))), update);
+    }
+
+    @Override
+    public void appendMessage(String chatId, Message message, LastMessage lastMessage, boolean restore) {
+        Update update = new Update()
+                .push("messages", message)
+                .set("last_message", lastMessage)
+                .set("updated_at", LocalDateTime.now())
+                .inc("version", 1);
+        if (restore) {
+            update.set("delete_by", List.of());
+        }
+        // typed so the message and its profile references are mapped like a saved chat
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(new ObjectId(chatId))), update, Chat.class);
+    }
+
+    @Override
+    public Optional<Message> findMessage(String chatId, String messageId) {
+        Query query = Query.query(Criteria.where("_id").is(new ObjectId(chatId)));
+        query.fields().elemMatch("messages", Criteria.where("message_id").is(new ObjectId(messageId)));
+        Document chat = mongoTemplate.findOne(query, Document.class, mongoTemplate.getCollectionName(Chat.class));
+        if (chat == null || chat.getList("messages", Document.class, List.of()).isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(mongoTemplate.getConverter().read(Message.class, chat.getList("messages", Document.class).get(0)));
+    }
+
+    @Override
+    public List<Message> findMessages(String chatId, Collection<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return List.of();
+        }
+        Document messages = new Document("$filter", new Document("input", "$messages")
+                .append("as", "message")
+                .append("cond", new Document("$in", List.of("$$message.message_id", messageIds.stream().map(ObjectId::new).toList()))));
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("_id").is(new ObjectId(chatId))),
+                Aggregation.stage(new Document("$project", new Document("messages", messages)))
+        );
+        Document result = mongoTemplate.aggregate(aggregation, mongoTemplate.getCollectionName(Chat.class), Document.class).getUniqueMappedResult();
+        if (result == null) {
+            return List.of();
+        }
+        return result.getList("messages", Document.class).stream()
+                .map(message -> mongoTemplate.getConverter().read(Message.class, message))
+                .toList();
+    }
+
+    @Override
+    public List<Message> findMessagesAround(String chatId, String messageId, String userInfoId, LocalDateTime after, int count) {
+        Document visible = visibleMessages(userInfoId, after, List.of());
+        Document position = new Document("$indexOfArray", List.of("$visible.message_id", new ObjectId(messageId)));
+        Document start = new Document("$max", List.of(0, new Document("$subtract", List.of("$position", count + 1))));
+        Document window = new Document("$cond", List.of(
+                new Document("$lt", List.of("$position", 0)),
+                List.of(),
+                new Document("$slice", List.of("$visible", start, new Document("$add", List.of(new Document("$subtract", List.of("$position", start)), count + 2))))
+        ));
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("_id").is(new ObjectId(chatId))),
+                Aggregation.stage(new Document("$project", new Document("visible", visible))),
+                Aggregation.stage(new Document("$project", new Document("visible", 1).append("position", position))),
+                Aggregation.stage(new Document("$project", new Document("window", window)))
+        );
+        Document result = mongoTemplate.aggregate(aggregation, mongoTemplate.getCollectionName(Chat.class), Document.class).getUniqueMappedResult();
+        if (result == null) {
+            return List.of();
+        }
+        return result.getList("window", Document.class).stream()
+                .map(message -> mongoTemplate.getConverter().read(Message.class, message))
+                .toList();
+    }
+
+    @Override
+    public Optional<Chat> findHeader(String chatId) {
+        Query query = Query.query(Criteria.where("_id").is(new ObjectId(chatId)));
+        query.fields().exclude("messages");
+        Chat chat = mongoTemplate.findOne(query, Chat.class);
+        if (chat != null) {
+            chat.setMessages(new ArrayList<>());
+        }
+        return Optional.ofNullable(chat);
+    }
+
+    @Override
+    public List<Message> findLatestMessages(String chatId, int count) {
+        Query query = Query.query(Criteria.where("_id").is(new ObjectId(chatId)));
+        query.fields().include("_id").slice("messages", -count);
+        Document chat = mongoTemplate.findOne(query, Document.class, mongoTemplate.getCollectionName(Chat.class));
+        if (chat == null) {
+            return List.of();
+        }
+        return chat.getList("messages", Document.class, List.of()).stream()
+                .map(message -> mongoTemplate.getConverter().read(Message.class, message))
+                .toList();
+    }
+
+    @Override
+    public Page<Message> findMessagePage(String chatId, String userInfoId, LocalDateTime after, Pageable pageable) {
+        return pageMessages(Criteria.where("_id").is(new ObjectId(chatId)), visibleMessages(userInfoId, after, List.of()), pageable);
+    }
+
+    @Override
+    public long countMessages(String chatId, String userInfoId, LocalDateTime after) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("_id").is(new ObjectId(chatId))),
+                Aggregation.stage(new Document("$project", new Document("total", new Document("$size", visibleMessages(userInfoId, after, List.of())))))
+        );
+        Document result = mongoTemplate.aggregate(aggregation, mongoTemplate.getCollectionName(Chat.class), Document.class).getUniqueMappedResult();
+        return result == null ? 0 : result.getInteger("total");
+    }
+
+    /**
+     * Slice one page of the visible messages on the server, counted from the newest like the message history
+     */
+    private Page<Message> pageMessages(Criteria chat, Document hits, Pageable pageable) {
+        List<AggregationOperation> operations = new ArrayList<>(List.of(
+                Aggregation.match(chat),
+                Aggregation.stage(new Document("$project", new Document("hits", hits))),
+                Aggregation.stage(new Document("$addFields", new Document("total", new Document("$size", "$hits"))))
+        ));
+        if (pageable.isPaged()) {
+            long end = pageable.getOffset() + pageable.getPageSize();
+            Document count = new Document("$min", List.of(pageable.getPageSize(), new Document("$subtract", List.of("$total", pageable.getOffset()))));
+            operations.add(Aggregation.stage(new Document("$project", new Document("total", 1).append("hits", new Document("$cond", List.of(
+                    new Document("$gt", List.of(count, 0)),
+                    new Document("$slice", List.of("$hits", new Document("$max", List.of(0, new Document("$subtract", List.of("$total", end)))), count)),
+                    List.of()
+            ))))));
+        }
+        Document result = mongoTemplate.aggregate(Aggregation.newAggregation(operations), mongoTemplate.getCollectionName(Chat.class), Document.class).getUniqueMappedResult();
+        if (result == null) {
+            return Page.empty(pageable);
+        }
+        List<Message> content = result.getList("hits", Document.class).stream()
+                .map(message -> mongoTemplate.getConverter().read(Message.class, message))
+                .toList();
+        return PageableExecutionUtils.getPage(content, pageable, () -> result.getInteger("total"));
+    }
+
+    @Override
+    public List<String> findChatIdsWithMessagesBefore(LocalDateTime before, int limit) {
+        // a chat starting with a pinned message has nothing to archive yet
+        Document firstNotPinned = new Document("$not", List.of(new Document("$in", List.of(
+                new Document("$first", "$messages.message_id"),
+                new Document("$ifNull", List.of("$pinned_message_ids", List.of()))
+        ))));
+        Query query = new BasicQuery(new Document("messages.0.created_at", new Document("$lt", Date.from(before.atZone(ZoneId.systemDefault()).toInstant())))
+                .append("$expr", firstNotPinned)).limit(limit);
+        query.fields().include("_id");
+        return mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(Chat.class)).stream()
+                .map(chat -> chat.getObjectId("_id").toHexString())
+                .toList();
+    }
+
+    @Override
+    public List<Message> findArchivableMessages(String chatId, LocalDateTime before, int limit) {
+        Query query = Query.query(Criteria.where("_id").is(new ObjectId(chatId)));
+        query.fields().include("_id", "pinned_message_ids").slice("messages", limit);
+        Document chat = mongoTemplate.findOne(query, Document.class, mongoTemplate.getCollectionName(Chat.class));
+        if (chat == null) {
+            return List.of();
+        }
+        List<ObjectId> pinnedMessageIds = chat.getList("pinned_message_ids", ObjectId.class, List.of());
+        return chat.getList("messages", Document.class, List.of()).stream()
+                .map(message -> mongoTemplate.getConverter().read(Message.class, message))
+                .takeWhile(message -> message.getCreatedAt().isBefore(before) && !pinnedMessageIds.contains(new ObjectId(message.getMessageId())))
+                .toList();
+    }
+
+    @Override
+    public long removeMessages(String chatId, Collection<String> messageIds) {
+        return mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(new ObjectId(chatId))),
+                new Update()
+                        .pull("messages", new Document("message_id", new Document("$in", messageIds.stream().map(ObjectId::new).toList())))
+                        .inc("version", 1),
+                mongoTemplate.getCollectionName(Chat.class)
+        ).getModifiedCount();
+    }
+
+    @Override
+    public List<String> findChatIdsToCompact(String afterChatId, LocalDateTime recalledBefore, int limit) {
+        Criteria criteria = new Criteria().orOperator(recalledWithPayload(recalledBefore), Criteria.where("messages.delete_by.0").exists(true));
+        if (afterChatId != null) {
+            criteria = new Criteria().andOperator(Criteria.where("_id").gt(new ObjectId(afterChatId)), criteria);
+        }
+        Query query = Query.query(criteria).with(Sort.by("_id")).limit(limit);
+        query.fields().include("_id");
+        return mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(Chat.class)).stream()
+                .map(chat -> chat.getObjectId("_id").toHexString())
+                .toList();
+    }
+
+    @Override
+    public long stripRecalledMessages(String chatId, LocalDateTime before) {
+        Update update = new Update()
+                .unset("messages.$[message].content")
+                .unset("messages.$[message].recent_reactor_ids")
+                .set("messages.$[message].attachments", List.of())
+                .set("messages.$[message].reactions", List.of())
+                .set("messages.$[message].reaction_counts", new Document())
+                .inc("version", 1)
+                .filterArray(Criteria.where("message.status").is(MessageStatus.UNSEND.name()).and("message.created_at").lt(before));
+        // only matches when something is left to strip, so the version is not raised for nothing
+        Query query = Query.query(new Criteria().andOperator(Criteria.where("_id").is(new ObjectId(chatId)), recalledWithPayload(before)));
+        return mongoTemplate.updateFirst(query, update, mongoTemplate.getCollectionName(Chat.class)).getModifiedCount();
+    }
+
+    private Criteria recalledWithPayload(LocalDateTime before) {
+        return Criteria.where("messages").elemMatch(Criteria.where("status").is(MessageStatus.UNSEND.name())
+                .and("created_at").lt(before)
+                .orOperator(
+                        Criteria.where("content").ne(null),
+                        Criteria.where("attachments.0").exists(true),
+                        Criteria.where("reactions.0").exists(true)
+                ));
+    }
+
+    @Override
+    public List<String> findMessageIdsDeletedByAll(String chatId, Collection<String> userInfoIds) {
+        if (userInfoIds.isEmpty()) {
+            return List.of();
+        }
+        Document deleted = new Document("$filter", new Document("input", "$messages")
+                .append("as", "message")
+                .append("cond", new Document("$and", List.of(
+                        new Document("$setIsSubset", List.of(userInfoIds.stream().map(ObjectId::new).toList(), new Document("$ifNull", List.of("$$message.delete_by", List.of())))),
+                        new Document("$not", List.of(new Document("$in", List.of("$$message.message_id", new Document("$ifNull", List.of("$pinned_message_ids", List.of()))))))
+                ))));
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("_id").is(new ObjectId(chatId))),
+                Aggregation.stage(new Document("$project", new Document("message_ids", new Document("$map", new Document("input", deleted)
+                        .append("as", "message")
+                        .append("in", "$$message.message_id")))))
+        );
+        Document result = mongoTemplate.aggregate(aggregation, mongoTemplate.getCollectionName(Chat.class), Document.class).getUniqueMappedResult();
+        if (result == null) {
+            return List.of();
+        }
+        return result.getList("message_ids", ObjectId.class).stream()
+                .map(ObjectId::toHexString)
+                .toList();
+    }
+
+    @Override
+    public long findDocumentSize(String chatId) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("_id").is(new ObjectId(chatId))),
+                Aggregation.stage(new Document("$project", new Document("size", new Document("$bsonSize", "$$ROOT"))))
+        );
+        Document result = mongoTemplate.aggregate(aggregation, mongoTemplate.getCollectionName(Chat.class), Document.class).getUniqueMappedResult();
+        return result == null ? 0 : ((Number) result.get("size")).longValue();
+    }
+
+    @Override
+    public long initVersions() {
+        return mongoTemplate.updateMulti(
+                Query.query(Criteria.where("version").exists(false)),
+                new Update().set("version", 0L),
+                mongoTemplate.getCollectionName(Chat.class)
+        ).getModifiedCount();
+    }
+
+    @Override
+    public long dropSearchTokens() {
+        IndexOperations indexOperations = mongoTemplate.indexOps(Chat.class);
+        if (indexOperations.getIndexInfo().stream().anyMatch(index -> index.getName().equals("message_search_tokens"))) {
+            indexOperations.dropIndex("message_search_tokens");
+        }
+        return mongoTemplate.updateMulti(
+                Query.query(Criteria.where("messages.search_tokens").exists(true)),
+                new Update().unset("messages.$[].search_tokens"),
+                mongoTemplate.getCollectionName(Chat.class)
+        ).getModifiedCount();
+    }
+
+    @Override
+    public Page<Reaction> findReactions(String chatId, String messageId, Pageable pageable) {
+        Document message = new Document("$arrayElemAt", List.of(new Document("$filter", new Document("input", "$messages")
+                .append("as", "message")
+                .append("cond", new Document("$eq", List.of("$$message.message_id", new ObjectId(messageId))))), 0));
+        Document reactions = new Document("$ifNull", List.of("$message.reactions", List.of()));
+        Document page = pageable.isPaged()
+                ? new Document("$slice", List.of(reactions, (int) pageable.getOffset(), pageable.getPageSize()))
+                : reactions;
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("_id").is(new ObjectId(chatId))),
+                Aggregation.stage(new Document("$project", new Document("message", message))),
+                Aggregation.stage(new Document("$project", new Document("total", new Document("$size", reactions)).append("reactions", page)))
+        );
+        Document result = mongoTemplate.aggregate(aggregation, mongoTemplate.getCollectionName(Chat.class), Document.class).getUniqueMappedResult();
+        if (result == null) {
+            return Page.empty(pageable);
+        }
+        List<Reaction> content = result.getList("reactions", Document.class).stream()
+                .map(reaction -> mongoTemplate.getConverter().read(Reaction.class, reaction))
+                .toList();
+        return PageableExecutionUtils.getPage(content, pageable, () -> result.getInteger("total"));
+    }
+
+    @Override
+    public int backfillReactionCounts() {
+        Query query = Query.query(Criteria.where("messages").elemMatch(Criteria.where("reactions.0").exists(true).and("reaction_counts").exists(false)));
+        query.fields().include("_id", "messages.message_id", "messages.reactions", "messages.reaction_counts");
+        List<Document> chats = mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(Chat.class));
+        for (Document chat : chats) {
+            BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Chat.class);
+            for (Document message : chat.getList("messages", Document.class)) {
+                List<Document> reactions = message.getList("reactions", Document.class, List.of());
+                if (reactions.isEmpty() || message.containsKey("reaction_counts")) {
+                    continue;
+                }
+                Document counts = new Document();
+                Set<Object> reactors = new LinkedHashSet<>();
+                for (Document reaction : reactions) {
+                    counts.merge(reaction.getString("type"), reaction.getInteger("quantity", 0), (a, b) -> (Integer) a + (Integer) b);
+                    if (reactors.size() < RECENT_REACTORS) {
+                        reactors.add(reaction.get("user_id"));
+                    }
+                }
+                bulkOperations.updateOne(
+                        Query.query(Criteria.where("_id").is(chat.get("_id"))),
+                        new Update()
+                                .set("messages.$[message].reaction_counts", counts)
+                                .set("messages.$[message].recent_reactor_ids", new ArrayList<>(reactors))
+                                .filterArray(Criteria.where("message.message_id").is(message.get("message_id")))
+                );
+            }
+            bulkOperations.execute();
+        }
+        return chats.size();
+    }
+
+    @Override
+    public long migratePinnedMessages() {
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("pinned_message_ids").toValueOf(Fields.field("pinned_messages.message_id"))
+                .unset("pinned_messages");
+        return mongoTemplate.updateMulti(
+                Query.query(Criteria.where("pinned_messages").exists(true)),
+                update,
+                mongoTemplate.getCollectionName(Chat.class)
+        ).getModifiedCount();
+    }
+
+    /**
+     * {@code $filter} of the chat messages not deleted by the user nor sent before {@code after}, with extra conditions
+     * on {@code $$message}
+     */
+    private Document visibleMessages(String userInfoId, LocalDateTime after, List<Document> extraConditions) {
+        List<Document> conditions = new ArrayList<>(extraConditions);
+        conditions.add(new Document("$not", List.of(new Document("$in", List.of(new ObjectId(userInfoId), new Document("$ifNull", List.of("$$message.delete_by", List.of())))))));
+        if (after != null) {
+            // converted like the mapping layer stores LocalDateTime, in the system time zone
+            conditions.add(new Document("$gt", List.of("$$message.created_at", Date.from(after.atZone(ZoneId.systemDefault()).toInstant()))));
+        }
+        return new Document("$filter", new Document("input", "$messages")
+                .append("as", "message")
+                .append("cond", new Document("$and", conditions)));
+    }
+
+    private long updateChat(Query query, Update update) {
+        return mongoTemplate.updateFirst(query, update, mongoTemplate.getCollectionName(Chat.class)).getMatchedCount();
+    }
+}
@@ -0,0 +1,19 @@
+package vn.edu.iuh.repositories;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+import vn.edu.iuh.models.Friend;
+import vn.edu.iuh.models.UserInfo;
+import vn.edu.iuh.models.enums.FriendStatus;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FriendRepository extends MongoRepository<Friend, String>, FriendRepositoryCustom {
+    Optional<Friend> findByOwnerAndProfile(UserInfo owner, UserInfo profile);
+
+    List<Friend> findAllByOwnerAndStatus(UserInfo owner, FriendStatus status);
+
+    long countByOwnerAndStatus(UserInfo owner, FriendStatus status);
+}
@@ -0,0 +1,30 @@
+package vn.edu.iuh.repositories;
+
+import org.springframework.data.domain.Pageable;
+import vn.edu.iuh.models.Friend;
+import vn.edu.iuh.models.enums.FriendStatus;
+
+import java.util.List;
+
+public interface FriendRepositoryCustom {
+    /**
+     * Set the status of the edge from one profile to another, creating the edge if it does not exist. The display
+     * name is only written on creation
+     *
+     * @param chatId chat of the two profiles, left untouched when {@code null}
+     */
+    void upsertStatus(String ownerId, String friendId, FriendStatus status, String displayName, String chatId);
+
+    /**
+     * Page of edges of one profile with the given status, ordered by display name. The profile of each friend is
+     * joined in the same query and set on {@link Friend#getProfile()} without its friends, groups and searches
+     */
+    List<Friend> findAllWithProfileByOwnerAndStatus(String ownerId, FriendStatus status, Pageable pageable);
+
+    /**
+     * Move friends still embedded in {@code user_info.friends} to the {@code friends} collection
+     *
+     * @return number of migrated profiles
+     */
+    int migrateEmbeddedFriends();
+}
@@ -0,0 +1,97 @@
+package vn.edu.iuh.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.LookupOperation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import vn.edu.iuh.models.Friend;
+import vn.edu.iuh.models.UserInfo;
+import vn.edu.iuh.models.enums.FriendStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class FriendRepositoryCustomImpl implements FriendRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void upsertStatus(String ownerId, String friendId, FriendStatus status, String displayName, String chatId) {
+        Update update = new Update()
+                .set("status", status.name())
+                .setOnInsert("display_name", displayName)
+                .setOnInsert("is_best_friend", false);
+        if (chatId != null) {
+            update.set("chat_id", new ObjectId(chatId));
+        }
+        mongoTemplate.upsert(
+                Query.query(Criteria.where("owner_id").is(new ObjectId(ownerId)).and("friend_id").is(new ObjectId(friendId))),
+                update,
+                Friend.class
+        );
+    }
+
+    @Override
+    public List<Friend> findAllWithProfileByOwnerAndStatus(String ownerId, FriendStatus status, Pageable pageable) {
+        List<AggregationOperation> operations = new ArrayList<>(List.of(
+                Aggregation.match(Criteria.where("owner_id").is(new ObjectId(ownerId)).and("status").is(status.name())),
+                Aggregation.sort(Sort.by("display_name"))
+        ));
+        if (pageable.isPaged()) {
+            operations.add(Aggregation.skip(pageable.getOffset()));
+            operations.add(Aggregation.limit(pageable.getPageSize()));
+        }
+        // only the public fields of the friend are joined, not its groups and recent searches
+        operations.add(LookupOperation.newLookup()
+                .from(mongoTemplate.getCollectionName(UserInfo.class))
+                .localField("friend_id")
+                .foreignField("_id")
+                .pipeline(Aggregation.project("first_name", "last_name", "bio", "thumbnail_avatar", "cover_image", "gender", "birthday", "created_at"))
+                .as("profile"));
+        operations.add(Aggregation.unwind("profile"));
+        List<Friend> friends = new ArrayList<>();
+        mongoTemplate.aggregate(Aggregation.newAggregation(operations), mongoTemplate.getCollectionName(Friend.class), Document.class).forEach(document -> {
+            Document profile = (Document) document.remove("profile");
+            Friend friend = mongoTemplate.getConverter().read(Friend.class, document);
+            friend.setProfile(mongoTemplate.getConverter().read(UserInfo.class, profile));
+            friends.add(friend);
+        });
+        return friends;
+    }
+
+    @Override
+    public int migrateEmbeddedFriends() {
+        Query query = Query.query(Criteria.where("friends.0").exists(true));
+        query.fields().include("_id", "friends");
+        List<Document> profiles = mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(UserInfo.class));
+        for (Document profile : profiles) {
+            ObjectId ownerId = profile.getObjectId("_id");
+            BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Friend.class);
+            for (Document friend : profile.getList("friends", Document.class)) {
+                Update update = new Update();
+                friend.forEach((key, value) -> {
+                    if (!key.equals("friend_id")) {
+                        update.set(key, value);
+                    }
+                });
+                bulkOperations.upsert(Query.query(Criteria.where("owner_id").is(ownerId).and("friend_id").is(friend.get("friend_id"))), update);
+            }
+            bulkOperations.execute();
+            mongoTemplate.updateFirst(
+                    Query.query(Criteria.where("_id").is(ownerId)),
+                    new Update().unset("friends"),
+                    UserInfo.class
+            );
+        }
+        return profiles.size();
+    }
+}
@@ -0,0 +1,19 @@
+package vn.edu.iuh.repositories;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.stereotype.Repository;
+import vn.edu.iuh.models.MessageArchive;
+
+import java.util.List;
+
+@Repository
+public interface MessageArchiveRepository extends MongoRepository<MessageArchive, String>, MessageArchiveRepositoryCustom {
+    /**
+     * @return the segments of a chat without their payload, newest first
+     */
+    @Query(value = "{ 'chat_id': ?0 }", fields = "{ 'payload': 0 }", sort = "{ 'last_message_id': -1 }")
+    List<MessageArchive> findHeadersByChatId(String chatId);
+
+    void deleteAllByChatId(String chatId);
+}
@@ -0,0 +1,39 @@
+package vn.edu.iuh.repositories;
+
+import vn.edu.iuh.models.Message;
+import vn.edu.iuh.models.MessageArchive;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+public interface MessageArchiveRepositoryCustom {
+    /**
+     * Compress consecutive messages of a chat, oldest first, into a new segment
+     *
+     * @return the saved segment without its payload
+     */
+    MessageArchive archive(String chatId, List<Message> messages);
+
+    /**
+     * @return the messages of a segment in history order, its payload is read when it was loaded without
+     */
+    List<Message> read(MessageArchive archive);
+
+    /**
+     * @return the archived messages of a chat with the given IDs in history order
+     */
+    List<Message> findMessages(String chatId, Collection<String> messageIds);
+
+    /**
+     * Mark an archived message as deleted by one user, rewriting the segment that holds it
+     *
+     * @return false when no segment of the chat holds the message
+     */
+    boolean addDeleteBy(String chatId, String messageId, String userInfoId);
+
+    /**
+     * Read every segment in turn with the ID of its chat, used to rebuild the collections derived from messages
+     */
+    void forEachSegment(BiConsumer<String, List<Message>> action);
+}
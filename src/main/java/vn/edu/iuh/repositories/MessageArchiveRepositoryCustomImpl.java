@@ -0,0 +1,181 @@
+package vn.edu.iuh.repositories;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import vn.edu.iuh.models.Message;
+import vn.edu.iuh.models.MessageArchive;
+import vn.edu.iuh.utils.ReferenceUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+@RequiredArgsConstructor
+public class MessageArchiveRepositoryCustomImpl implements MessageArchiveRepositoryCustom {
+    private static final int REWRITE_ATTEMPTS = 3;
+    private final MongoTemplate mongoTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Override
+    public MessageArchive archive(String chatId, List<Message> messages) {
+        List<Document> documents = messages.stream()
+                .map(message -> {
+                    Document document = new Document();
+                    mongoTemplate.getConverter().write(message, document);
+                    return document;
+                })
+                .toList();
+        ByteBuffer bson = encode(new Document("messages", documents));
+        byte[] payload = compress(bson);
+        Map<String, Integer> deleteCounts = new HashMap<>();
+        messages.forEach(message -> ReferenceUtil.idsOf(message.getDeleteBy()).forEach(userInfoId -> deleteCounts.merge(userInfoId, 1, Integer::sum)));
+        MessageArchive archive = mongoTemplate.insert(MessageArchive.builder()
+                .chatId(chatId)
+                .firstMessageId(new ObjectId(messages.get(0).getMessageId()))
+                .lastMessageId(new ObjectId(messages.get(messages.size() - 1).getMessageId()))
+                .firstCreatedAt(messages.get(0).getCreatedAt())
+                .lastCreatedAt(messages.get(messages.size() - 1).getCreatedAt())
+                .count(messages.size())
+                .deleteCounts(deleteCounts)
+                .size(bson.remaining())
+                .compressedSize(payload.length)
+                .payload(payload)
+                .archivedAt(LocalDateTime.now())
+                .build());
+        meterRegistry.counter("chat.archive.moved.bytes").increment(archive.getSize());
+        meterRegistry.counter("chat.archive.stored.bytes").increment(archive.getCompressedSize());
+        meterRegistry.counter("chat.archive.moved.messages").increment(archive.getCount());
+        archive.setPayload(null);
+        return archive;
+    }
+
+    @Override
+    public List<Message> read(MessageArchive archive) {
+        return Timer.builder("chat.archive.read").register(meterRegistry).record(() -> {
+            byte[] payload = archive.getPayload();
+            if (payload == null) {
+                Query query = Query.query(Criteria.where("_id").is(archive.getId()));
+                query.fields().include("payload");
+                MessageArchive loaded = mongoTemplate.findOne(query, MessageArchive.class);
+                if (loaded == null) {
+                    return List.<Message>of();
+                }
+                payload = loaded.getPayload();
+            }
+            return decode(payload).getList("messages", Document.class).stream()
+                    .map(message -> mongoTemplate.getConverter().read(Message.class, message))
+                    .toList();
+        });
+    }
+
+    @Override
+    public List<Message> findMessages(String chatId, Collection<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return List.of();
+        }
+        List<Criteria> ranges = messageIds.stream()
+                .map(ObjectId::new)
+                .map(id -> Criteria.where("first_message_id").lte(id).and("last_message_id").gte(id))
+                .toList();
+        Query query = Query.query(Criteria.where("chat_id").is(chatId).orOperator(ranges))
+                .with(Sort.by("first_message_id"));
+        return mongoTemplate.find(query, MessageArchive.class).stream()
+                .flatMap(archive -> read(archive).stream())
+                .filter(message -> messageIds.contains(message.getMessageId()))
+                .toList();
+    }
+
+    @Override
+    public boolean addDeleteBy(String chatId, String messageId, String userInfoId) {
+        ObjectId id = new ObjectId(messageId);
+        ObjectId user = new ObjectId(userInfoId);
+        Query holding = Query.query(Criteria.where("chat_id").is(chatId).and("first_message_id").lte(id).and("last_message_id").gte(id));
+        for (int attempt = 0; attempt < REWRITE_ATTEMPTS; attempt++) {
+            MessageArchive archive = mongoTemplate.findOne(holding, MessageArchive.class);
+            if (archive == null) {
+                return false;
+            }
+            // edited as stored, so the references of the other messages are written back untouched
+            Document segment = decode(archive.getPayload());
+            Document message = segment.getList("messages", Document.class).stream()
+                    .filter(stored -> id.equals(stored.getObjectId("message_id")))
+                    .findFirst()
+                    .orElse(null);
+            if (message == null) {
+                return false;
+            }
+            List<Object> deleteBy = new ArrayList<>(message.getList("delete_by", Object.class, List.of()));
+            if (deleteBy.contains(user)) {
+                return true;
+            }
+            deleteBy.add(user);
+            message.put("delete_by", deleteBy);
+            ByteBuffer bson = encode(segment);
+            byte[] payload = compress(bson);
+            Update update = new Update()
+                    .set("payload", payload)
+                    .set("size", bson.remaining())
+                    .set("compressed_size", payload.length)
+                    .inc("delete_counts." + userInfoId, 1)
+                    .inc("version", 1);
+            Query unchanged = Query.query(Criteria.where("_id").is(archive.getId()).and("version").is(archive.getVersion()));
+            if (mongoTemplate.updateFirst(unchanged, update, MessageArchive.class).getModifiedCount() > 0) {
+                return true;
+            }
+        }
+        throw new OptimisticLockingFailureException("Segment holding message " + messageId + " kept changing");
+    }
+
+    @Override
+    public void forEachSegment(BiConsumer<String, List<Message>> action) {
+        try (var archives = mongoTemplate.stream(new Query(), MessageArchive.class)) {
+            archives.forEach(archive -> action.accept(archive.getChatId(), read(archive)));
+        }
+    }
+
+    private static ByteBuffer encode(Document segment) {
+        return new RawBsonDocument(segment, new DocumentCodec()).getByteBuffer().asNIO();
+    }
+
+    private static Document decode(byte[] payload) {
+        return new RawBsonDocument(decompress(payload)).decode(new DocumentCodec());
+    }
+
+    private static byte[] compress(ByteBuffer bson) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+            byte[] bytes = new byte[bson.remaining()];
+            bson.duplicate().get(bytes);
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] payload) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(payload))) {
+            return gzip.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package vn.edu.iuh.repositories;
+
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+import vn.edu.iuh.models.Chat;
+import vn.edu.iuh.models.Message;
+
+import java.util.*;
+
+/**
+ * Newest messages of the recently active chats, kept as a bounded window per chat so the first history page is
+ * served without reading the chat document. A chat missing from the cache is loaded with one sliced read of its newest
+ * messages. Sent messages are {@link #append}ed, the window is replaced from the saved chat after every whole chat
+ * save, other writes such as reactions must {@link #evict} it
+ */
+@Component
+public class MessageTailCache extends AbstractMongoEventListener<Chat> {
+    private final ChatRepository chatRepository;
+    private final int tailSize;
+    private final Map<String, Tail> tails;
+
+    public MessageTailCache(ChatRepository chatRepository, @Value("${app.message-tail.size:50}") int tailSize, @Value("${app.message-tail.max-chats:1000}") int maxChats) {
+        this.chatRepository = chatRepository;
+        this.tailSize = tailSize;
+        this.tails = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tail> eldest) {
+                return size() > maxChats;
+            }
+        });
+    }
+
+    /**
+     * @return the newest messages of a chat in history order. They are shared by every caller and must be copied
+     * before being changed
+     */
+    public Tail get(String chatId) {
+        Tail tail = tails.get(chatId);
+        if (tail == null) {
+            tail = new Tail(tailSize, chatRepository.findLatestMessages(chatId, tailSize));
+            tails.put(chatId, tail);
+        }
+        return tail;
+    }
+
+    /**
+     * Add a message just pushed to the chat. The window is dropped instead when the message is not the newest one,
+     * another send may have been stored first
+     */
+    public void append(String chatId, Message message) {
+        tails.computeIfPresent(chatId, (id, tail) -> {
+            List<Message> messages = tail.messages();
+            if (!messages.isEmpty() && new ObjectId(messages.get(messages.size() - 1).getMessageId()).compareTo(new ObjectId(message.getMessageId())) > 0) {
+                return null;
+            }
+            List<Message> appended = new ArrayList<>(messages.subList(messages.size() < tailSize ? 0 : 1, messages.size()));
+            appended.add(message.copy());
+            return new Tail(List.copyOf(appended), tail.complete() && messages.size() < tailSize);
+        });
+    }
+
+    public void evict(String chatId) {
+        tails.remove(chatId);
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<Chat> event) {
+        Chat chat = event.getSource();
+        if (chat.getId() != null && chat.getMessages() != null) {
+            List<Message> messages = chat.getMessages();
+            // copied, the saved messages stay in the cached chat and are changed in place
+            tails.put(chat.getId(), new Tail(tailSize, messages.subList(Math.max(0, messages.size() - tailSize), messages.size()).stream()
+                    .map(Message::copy)
+                    .toList()));
+        }
+    }
+
+    /**
+     * Snapshot of the newest messages of one chat. {@code complete} tells the whole history fits in it
+     */
+    public record Tail(List<Message> messages, boolean complete) {
+        Tail(int tailSize, List<Message> messages) {
+            this(List.copyOf(messages), messages.size() < tailSize);
+        }
+    }
+}
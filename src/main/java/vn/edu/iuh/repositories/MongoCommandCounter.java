@@ -0,0 +1,15 @@
+package vn.edu.iuh.repositories;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+
+/**
+ * Count the commands sent to Mongo by the current request. The synchronous driver notifies listeners on the calling
+ * thread, so the count lands in the {@link UnitOfWork} of that request
+ */
+public class MongoCommandCounter implements CommandListener {
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        UnitOfWork.recordMongoCommand();
+    }
+}
@@ -0,0 +1,50 @@
+package vn.edu.iuh.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import vn.edu.iuh.models.GroupMember;
+import vn.edu.iuh.models.Message;
+import vn.edu.iuh.models.UserInfo;
+import vn.edu.iuh.utils.ReferenceUtil;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolve the profile references of a whole response at once. Lazy references would otherwise be resolved one query
+ * per reference while the response is serialized; here every missing profile is loaded with a single {@code $in}
+ * query and the proxies are swapped for the loaded instances. Senders and reactors are only rendered as summaries, so
+ * for them the {@link UserSummaryCache} is warmed instead and the proxies are left unresolved
+ */
+@Component
+@RequiredArgsConstructor
+public class ReferenceResolver {
+    private final UserInfoRepository userInfoRepository;
+    private final UserSummaryCache userSummaryCache;
+
+    public void resolveSenders(Collection<Message> messages) {
+        Set<String> ids = new HashSet<>();
+        messages.forEach(message -> {
+            ids.add(ReferenceUtil.idOf(message.getSender()));
+            if (message.getRecentReactors() != null) {
+                ids.addAll(ReferenceUtil.idsOf(message.getRecentReactors()));
+            }
+        });
+        ids.remove(null);
+        userSummaryCache.getAll(ids);
+    }
+
+    public void resolveProfiles(Collection<GroupMember> members) {
+        Set<String> ids = new HashSet<>();
+        members.forEach(member -> ids.add(ReferenceUtil.idOf(member.getProfile())));
+        Map<String, UserInfo> profiles = findProfiles(ids);
+        members.forEach(member -> member.setProfile(profiles.getOrDefault(ReferenceUtil.idOf(member.getProfile()), member.getProfile())));
+    }
+
+    private Map<String, UserInfo> findProfiles(Set<String> ids) {
+        ids.remove(null);
+        return UnitOfWork.findAll(UserInfo.class, ids, userInfoRepository::findAllById, UserInfo::getId);
+    }
+}
@@ -0,0 +1,106 @@
+package vn.edu.iuh.repositories;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import vn.edu.iuh.models.Chat;
+import vn.edu.iuh.models.Message;
+import vn.edu.iuh.models.ReplyPreview;
+import vn.edu.iuh.models.UserSummary;
+import vn.edu.iuh.models.enums.MessageStatus;
+import vn.edu.iuh.utils.ReferenceUtil;
+
+import java.util.*;
+
+/**
+ * Bounded LRU cache of {@link ReplyPreview} by quoted message ID. Missing previews are taken from the loaded chat, then
+ * from one query for the page, then from the archive. The sender summary is attached on every render from
+ * {@link UserSummaryCache}, so a renamed sender shows up without evicting previews
+ */
+@Component
+public class ReplyPreviewCache {
+    private static final int CONTENT_LENGTH = 100;
+    private final ChatRepository chatRepository;
+    private final MessageArchiveRepository messageArchiveRepository;
+    private final UserSummaryCache userSummaryCache;
+    private final Map<String, ReplyPreview> previews;
+
+    public ReplyPreviewCache(ChatRepository chatRepository, MessageArchiveRepository messageArchiveRepository, UserSummaryCache userSummaryCache, @Value("${app.reply-preview-cache.max-size:10000}") int maxSize) {
+        this.chatRepository = chatRepository;
+        this.messageArchiveRepository = messageArchiveRepository;
+        this.userSummaryCache = userSummaryCache;
+        this.previews = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ReplyPreview> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    /**
+     * Set the reply preview of every message of the chat that quotes another one
+     */
+    public void resolve(Chat chat, Collection<Message> messages) {
+        Map<String, ReplyPreview> found = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        messages.stream()
+                .map(Message::getReplyMessageId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .forEach(id -> {
+                    ReplyPreview preview = previews.get(id);
+                    int index = preview == null ? chat.indexOfMessage(id) : -1;
+                    if (index >= 0) {
+                        preview = build(chat.getMessages().get(index));
+                        previews.put(id, preview);
+                    }
+                    if (preview != null) {
+                        found.put(id, preview);
+                    } else {
+                        missing.add(id);
+                    }
+                });
+        if (!missing.isEmpty()) {
+            List<Message> quoted = new ArrayList<>(chatRepository.findMessages(chat.getId(), missing));
+            quoted.forEach(message -> missing.remove(message.getMessageId()));
+            if (!missing.isEmpty()) {
+                quoted.addAll(messageArchiveRepository.findMessages(chat.getId(), missing));
+            }
+            quoted.forEach(message -> {
+                ReplyPreview preview = build(message);
+                previews.put(message.getMessageId(), preview);
+                found.put(message.getMessageId(), preview);
+            });
+        }
+        if (found.isEmpty()) {
+            return;
+        }
+        Map<String, UserSummary> senders = userSummaryCache.getAll(found.values().stream().map(ReplyPreview::getSenderId).filter(Objects::nonNull).distinct().toList());
+        messages.forEach(message -> {
+            ReplyPreview preview = message.getReplyMessageId() == null ? null : found.get(message.getReplyMessageId());
+            if (preview != null) {
+                message.setReplyPreview(preview.toBuilder().sender(senders.get(preview.getSenderId())).build());
+            }
+        });
+    }
+
+    /**
+     * Drop the preview of a message whose content changed, used when it is recalled
+     */
+    public void evict(String messageId) {
+        previews.remove(messageId);
+    }
+
+    private ReplyPreview build(Message message) {
+        boolean recalled = message.getStatus() == MessageStatus.UNSEND;
+        String content = recalled ? "Tin nhắn đã bị thu hồi" : message.getContent();
+        if (content != null && content.length() > CONTENT_LENGTH) {
+            content = content.substring(0, CONTENT_LENGTH) + "…";
+        }
+        return ReplyPreview.builder()
+                .messageId(message.getMessageId())
+                .senderId(ReferenceUtil.idOf(message.getSender()))
+                .content(content)
+                .attachmentType(recalled || message.getAttachments() == null || message.getAttachments().isEmpty() ? null : message.getAttachments().get(0).getType())
+                .build();
+    }
+}
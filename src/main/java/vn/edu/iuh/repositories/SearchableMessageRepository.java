@@ -0,0 +1,12 @@
+package vn.edu.iuh.repositories;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+import vn.edu.iuh.models.SearchableMessage;
+
+@Repository
+public interface SearchableMessageRepository extends MongoRepository<SearchableMessage, String>, SearchableMessageRepositoryCustom {
+    void deleteAllByChatId(String chatId);
+
+    boolean existsByAttachmentTypesIsNull();
+}
@@ -0,0 +1,59 @@
+package vn.edu.iuh.repositories;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import vn.edu.iuh.dto.MessageFilterDTO;
+import vn.edu.iuh.models.SearchableMessage;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+public interface SearchableMessageRepositoryCustom {
+    /**
+     * Text search in the given chats, ranked by text score then newest first
+     *
+     * @param chats chat IDs of the caller, each mapped to the time the caller cleared its history or null
+     */
+    Page<SearchableMessage> search(String query, Map<String, LocalDateTime> chats, String userInfoId, Pageable pageable);
+
+    /**
+     * IDs of the messages of one chat holding every token, skipping the messages the user deleted or sent before
+     * {@code after}. Pages are counted from the newest hit, IDs of a page are newest first
+     */
+    Page<String> findMessageIds(String chatId, List<String> tokens, String userInfoId, LocalDateTime after, Pageable pageable);
+
+    /**
+     * Fill the words of messages indexed before they were stored
+     *
+     * @return number of updated messages
+     */
+    long backfillTokens();
+
+    /**
+     * Drop indexes created by earlier versions that no query uses any more
+     *
+     * @return number of dropped indexes
+     */
+    int dropUnusedIndexes();
+
+    /**
+     * IDs of the messages of one chat matching the filter, newest first, read from the index only. At most
+     * {@code filter.size + 1} IDs are returned so the caller can tell whether another page follows
+     *
+     * @param after time the caller cleared the chat history or null
+     */
+    List<String> findMessageIds(String chatId, MessageFilterDTO filter, String userInfoId, LocalDateTime after);
+
+    /**
+     * Mark a message as deleted for one user so it no longer shows in their results
+     */
+    void addDeleteBy(String messageId, String userInfoId);
+
+    /**
+     * Copy every message of every chat, archived ones included, into the collection, replacing the existing entries
+     *
+     * @return number of indexed messages
+     */
+    long rebuild();
+}
@@ -0,0 +1,195 @@
+package vn.edu.iuh.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.*;
+import org.springframework.data.support.PageableExecutionUtils;
+import vn.edu.iuh.dto.MessageFilterDTO;
+import vn.edu.iuh.models.Chat;
+import vn.edu.iuh.models.Message;
+import vn.edu.iuh.models.SearchableMessage;
+import vn.edu.iuh.models.enums.MessageStatus;
+import vn.edu.iuh.models.enums.MessageType;
+import vn.edu.iuh.utils.TextUtil;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+@RequiredArgsConstructor
+public class SearchableMessageRepositoryCustomImpl implements SearchableMessageRepositoryCustom {
+    private static final int REBUILD_BATCH_SIZE = 1000;
+    // the cross-chat search is served by the text index, and the per-chat lookups order by _id
+    private static final List<String> UNUSED_INDEXES = List.of("chat_created");
+    private final MongoTemplate mongoTemplate;
+    private final MessageArchiveRepository messageArchiveRepository;
+
+    @Override
+    public Page<SearchableMessage> search(String query, Map<String, LocalDateTime> chats, String userInfoId, Pageable pageable) {
+        List<Criteria> scopes = chats.entrySet().stream()
+                .map(chat -> chat.getValue() == null
+                        ? Criteria.where("chat_id").is(chat.getKey())
+                        : Criteria.where("chat_id").is(chat.getKey()).and("created_at").gt(chat.getValue()))
+                .toList();
+        Query textQuery = TextQuery.queryText(TextCriteria.forLanguage("none").matching(query))
+                .sortByScore()
+                .addCriteria(new Criteria().orOperator(scopes))
+                .addCriteria(Criteria.where("delete_by").ne(userInfoId));
+        textQuery.with(Sort.by(Sort.Direction.DESC, "created_at"));
+        Query countQuery = Query.of(textQuery).skip(0).limit(0);
+        textQuery.with(pageable);
+        List<SearchableMessage> hits = mongoTemplate.find(textQuery, SearchableMessage.class);
+        return PageableExecutionUtils.getPage(hits, pageable, () -> mongoTemplate.count(countQuery, SearchableMessage.class));
+    }
+
+    @Override
+    public int dropUnusedIndexes() {
+        IndexOperations indexOperations = mongoTemplate.indexOps(SearchableMessage.class);
+        List<String> dropped = indexOperations.getIndexInfo().stream()
+                .map(IndexInfo::getName)
+                .filter(UNUSED_INDEXES::contains)
+                .toList();
+        dropped.forEach(indexOperations::dropIndex);
+        return dropped.size();
+    }
+
+    @Override
+    public List<String> findMessageIds(String chatId, MessageFilterDTO filter, String userInfoId, LocalDateTime after) {
+        Criteria criteria = Criteria.where("chat_id").is(chatId).and("delete_by").ne(userInfoId);
+        if (filter.getSenderId() != null) {
+            criteria.and("sender_id").is(filter.getSenderId());
+        }
+        if (filter.getAttachmentType() != null) {
+            criteria.and("attachment_types").is(filter.getAttachmentType().name());
+        }
+        // the time range is applied to _id so it is served by the same index as the order
+        Criteria idRange = Criteria.where("_id");
+        LocalDateTime from = after == null || (filter.getFrom() != null && filter.getFrom().isAfter(after)) ? filter.getFrom() : after;
+        if (from != null) {
+            idRange.gte(idAt(from));
+        }
+        if (filter.getTo() != null) {
+            idRange.lt(idAt(filter.getTo()));
+        }
+        if (filter.getCursor() != null) {
+            idRange.lt(new ObjectId(filter.getCursor()));
+        }
+        if (from != null || filter.getTo() != null || filter.getCursor() != null) {
+            criteria.andOperator(idRange);
+        }
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "_id"))
+                .limit(filter.getSize() + 1);
+        query.fields().include("_id");
+        return mongoTemplate.find(query, SearchableMessage.class).stream()
+                .map(SearchableMessage::getId)
+                .toList();
+    }
+
+    @Override
+    public Page<String> findMessageIds(String chatId, List<String> tokens, String userInfoId, LocalDateTime after, Pageable pageable) {
+        Criteria criteria = Criteria.where("chat_id").is(chatId).and("tokens").all(tokens).and("delete_by").ne(userInfoId);
+        if (after != null) {
+            criteria.and("_id").gt(idAt(after));
+        }
+        Query query = Query.query(criteria).with(Sort.by(Sort.Direction.DESC, "_id"));
+        query.fields().include("_id");
+        Query countQuery = Query.of(query);
+        query.with(pageable);
+        List<String> ids = mongoTemplate.find(query, SearchableMessage.class).stream()
+                .map(SearchableMessage::getId)
+                .toList();
+        return PageableExecutionUtils.getPage(ids, pageable, () -> mongoTemplate.count(countQuery, SearchableMessage.class));
+    }
+
+    @Override
+    public long backfillTokens() {
+        Query query = Query.query(Criteria.where("tokens").exists(false));
+        query.fields().include("_id", "content");
+        long updated = 0;
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SearchableMessage.class);
+        int batch = 0;
+        try (var messages = mongoTemplate.stream(query, SearchableMessage.class)) {
+            for (SearchableMessage message : (Iterable<SearchableMessage>) messages::iterator) {
+                bulkOperations.updateOne(Query.query(Criteria.where("_id").is(message.getId())), new Update().set("tokens", TextUtil.tokenize(message.getContent())));
+                updated++;
+                if (++batch == REBUILD_BATCH_SIZE) {
+                    bulkOperations.execute();
+                    bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SearchableMessage.class);
+                    batch = 0;
+                }
+            }
+        }
+        if (batch > 0) {
+            bulkOperations.execute();
+        }
+        return updated;
+    }
+
+    @Override
+    public void addDeleteBy(String messageId, String userInfoId) {
+        mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(messageId)),
+                new Update().addToSet("delete_by", userInfoId),
+                SearchableMessage.class
+        );
+    }
+
+    private static ObjectId idAt(LocalDateTime time) {
+        return new ObjectId(Date.from(time.atZone(ZoneId.systemDefault()).toInstant()), 0);
+    }
+
+    @Override
+    public long rebuild() {
+        mongoTemplate.remove(new Query(), SearchableMessage.class);
+        Query query = new Query();
+        query.fields().include("_id", "messages");
+        Rebuild rebuild = new Rebuild();
+        try (var chats = mongoTemplate.stream(query, Chat.class)) {
+            chats.forEach(chat -> rebuild.index(chat.getId(), chat.getMessages()));
+        }
+        // archived messages stay searchable
+        messageArchiveRepository.forEachSegment(rebuild::index);
+        return rebuild.finish();
+    }
+
+    /**
+     * Inserts of a rebuild, sent in batches of {@link #REBUILD_BATCH_SIZE}
+     */
+    private class Rebuild {
+        private BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SearchableMessage.class);
+        private int batch;
+        private long indexed;
+
+        void index(String chatId, List<Message> messages) {
+            for (Message message : messages) {
+                if (message.getType() != MessageType.MESSAGE || message.getStatus() == MessageStatus.UNSEND) {
+                    continue;
+                }
+                bulkOperations.insert(SearchableMessage.from(chatId, message));
+                indexed++;
+                if (++batch == REBUILD_BATCH_SIZE) {
+                    bulkOperations.execute();
+                    bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SearchableMessage.class);
+                    batch = 0;
+                }
+            }
+        }
+
+        long finish() {
+            if (batch > 0) {
+                bulkOperations.execute();
+            }
+            return indexed;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package vn.edu.iuh.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+import vn.edu.iuh.models.Counter;
+
+/**
+ * Monotonic counters stored in the {@code counters} collection
+ */
+@Repository
+@RequiredArgsConstructor
+public class SequenceRepository {
+    public static final String USER_CHAT_VERSION = "user_chat_version";
+
+    private final MongoTemplate mongoTemplate;
+
+    public long next(String name) {
+        Counter counter = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(name)),
+                new Update().inc("seq", 1),
+                FindAndModifyOptions.options().returnNew(true).upsert(true),
+                Counter.class
+        );
+        return counter == null ? 1 : counter.getSeq();
+    }
+}
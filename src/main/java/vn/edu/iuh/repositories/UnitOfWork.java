@@ -0,0 +1,107 @@
+package vn.edu.iuh.repositories;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Identity map bound to the current request thread. Entities loaded by ID are kept for the rest of the request so
+ * later lookups of the same document get the same instance instead of another query. Outside a request (scheduled
+ * jobs, STOMP handlers) every lookup goes straight to the loader. Changes are not tracked, services still save what
+ * they change
+ */
+public final class UnitOfWork {
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    private final Map<Class<?>, Map<String, Object>> entities = new HashMap<>();
+    private int mongoCommands;
+    private int identityMapHits;
+
+    private UnitOfWork() {
+    }
+
+    public static UnitOfWork begin() {
+        UnitOfWork unitOfWork = new UnitOfWork();
+        CURRENT.set(unitOfWork);
+        return unitOfWork;
+    }
+
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Return the entity already loaded in this request or load it and remember it
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Optional<T> find(Class<T> type, String id, Function<String, Optional<T>> loader) {
+        UnitOfWork unitOfWork = CURRENT.get();
+        if (unitOfWork == null || id == null) {
+            return loader.apply(id);
+        }
+        Map<String, Object> loaded = unitOfWork.entities.computeIfAbsent(type, key -> new HashMap<>());
+        T entity = (T) loaded.get(id);
+        if (entity != null) {
+            unitOfWork.identityMapHits++;
+            return Optional.of(entity);
+        }
+        Optional<T> result = loader.apply(id);
+        result.ifPresent(value -> loaded.put(id, value));
+        return result;
+    }
+
+    /**
+     * Return the entities already loaded in this request and load the missing ones with a single call
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Map<String, T> findAll(Class<T> type, Collection<String> ids, Function<Collection<String>, Iterable<T>> loader, Function<T, String> idGetter) {
+        UnitOfWork unitOfWork = CURRENT.get();
+        Map<String, Object> loaded = unitOfWork == null ? new HashMap<>() : unitOfWork.entities.computeIfAbsent(type, key -> new HashMap<>());
+        Map<String, T> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            T entity = (T) loaded.get(id);
+            if (entity != null) {
+                result.put(id, entity);
+            } else if (id != null) {
+                missing.add(id);
+            }
+        }
+        if (unitOfWork != null) {
+            unitOfWork.identityMapHits += result.size();
+        }
+        if (!missing.isEmpty()) {
+            loader.apply(missing).forEach(entity -> {
+                String id = idGetter.apply(entity);
+                loaded.put(id, entity);
+                result.put(id, entity);
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Remember an entity loaded through another key, e.g. a profile found by its account
+     */
+    public static <T> T register(Class<T> type, String id, T entity) {
+        UnitOfWork unitOfWork = CURRENT.get();
+        if (unitOfWork != null && id != null) {
+            unitOfWork.entities.computeIfAbsent(type, key -> new HashMap<>()).putIfAbsent(id, entity);
+        }
+        return entity;
+    }
+
+    static void recordMongoCommand() {
+        UnitOfWork unitOfWork = CURRENT.get();
+        if (unitOfWork != null) {
+            unitOfWork.mongoCommands++;
+        }
+    }
+
+    public int getMongoCommands() {
+        return mongoCommands;
+    }
+
+    public int getIdentityMapHits() {
+        return identityMapHits;
+    }
+}
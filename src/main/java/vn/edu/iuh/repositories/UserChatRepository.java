@@ -0,0 +1,26 @@
+package vn.edu.iuh.repositories;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+import vn.edu.iuh.models.Chat;
+import vn.edu.iuh.models.UserChat;
+import vn.edu.iuh.models.UserInfo;
+import vn.edu.iuh.models.enums.UserChatStatus;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UserChatRepository extends MongoRepository<UserChat, String>, UserChatRepositoryCustom {
+    Optional<UserChat> findByUserAndChat(UserInfo user, Chat chat);
+
+    List<UserChat> findAllByUserAndStatusInOrderByLastMessageAtDesc(UserInfo user, Collection<UserChatStatus> statuses, Pageable pageable);
+
+    List<UserChat> findAllByUserAndVersionGreaterThan(UserInfo user, long version);
+
+    void deleteByUserAndChat(UserInfo user, Chat chat);
+
+    void deleteAllByChat(Chat chat);
+}
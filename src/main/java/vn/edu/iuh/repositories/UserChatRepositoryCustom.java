@@ -0,0 +1,67 @@
+package vn.edu.iuh.repositories;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import vn.edu.iuh.models.MessageSummary;
+import vn.edu.iuh.models.UserChat;
+import vn.edu.iuh.models.UserSummary;
+
+import java.util.Map;
+
+public interface UserChatRepositoryCustom {
+    /**
+     * Stamp the chat entry of every member with a new version and the new last message, and increase the unread
+     * counter of every member except the sender. The sender's entry is marked as seen up to the appended message
+     */
+    void appendChatMessage(String chatId, String senderId, MessageSummary lastMessage, long version);
+
+    /**
+     * Bring back the chat entries that members deleted, used when a new message arrives. The version is left to
+     * {@link #appendChatMessage} which always follows
+     */
+    void restoreDeletedChats(String chatId);
+
+    /**
+     * Reset the unread counter of one member's chat entry and move its last seen message
+     */
+    void markChatSeen(String userInfoId, String chatId, String messageId, long version);
+
+    /**
+     * @return unread counter of the chat entry keyed by user info id of every member
+     */
+    Map<String, Integer> findUnreadCountsByChat(String chatId);
+
+    /**
+     * Store the denormalized summary (name, avatar, group, peer, last message) of one chat entry
+     */
+    void updateChatSummary(UserChat userChat);
+
+    /**
+     * Copy the new name and avatar of a group to the chat entry of every member
+     */
+    void updateGroupChatSummary(String chatId, String name, String avatar, long version);
+
+    /**
+     * Copy the new name and avatar of a profile to every direct chat entry where it is the peer and to every
+     * last message it sent
+     */
+    void updatePeerSummary(UserSummary profile, long version);
+
+    /**
+     * Chat list of a profile: pinned entries first, then normal and hidden ones, each newest first. Pinned entries
+     * count in the page size like the others, so a page never holds more than {@code pageable.pageSize} entries
+     */
+    Page<UserChat> findChatList(String userInfoId, Pageable pageable);
+
+    /**
+     * @return sum of the unread counters of every chat entry that is not deleted
+     */
+    int sumUnreadCount(String userInfoId);
+
+    /**
+     * Move chat entries still embedded in {@code user_info.chats} to the {@code user_chats} collection
+     *
+     * @return number of migrated profiles
+     */
+    int migrateEmbeddedChats();
+}
@@ -0,0 +1,192 @@
+package vn.edu.iuh.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.support.PageableExecutionUtils;
+import vn.edu.iuh.models.MessageSummary;
+import vn.edu.iuh.models.UserChat;
+import vn.edu.iuh.models.UserInfo;
+import vn.edu.iuh.models.UserSummary;
+import vn.edu.iuh.models.enums.UserChatStatus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RequiredArgsConstructor
+public class UserChatRepositoryCustomImpl implements UserChatRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void appendChatMessage(String chatId, String senderId, MessageSummary lastMessage, long version) {
+        mongoTemplate.updateMulti(
+                Query.query(Criteria.where("chat_id").is(new ObjectId(chatId))),
+                new Update()
+                        .set("version", version)
+                        .set("last_message", lastMessage)
+                        .set("last_message_at", lastMessage.getCreatedAt()),
+                UserChat.class
+        );
+        Criteria criteria = Criteria.where("chat_id").is(new ObjectId(chatId));
+        if (senderId != null) {
+            criteria = criteria.and("user_id").ne(new ObjectId(senderId));
+            markChatSeen(senderId, chatId, lastMessage.getMessageId(), version);
+        }
+        mongoTemplate.updateMulti(Query.query(criteria), new Update().inc("unread_count", 1), UserChat.class);
+    }
+
+    @Override
+    public void restoreDeletedChats(String chatId) {
+        mongoTemplate.updateMulti(
+                Query.query(Criteria.where("chat_id").is(new ObjectId(chatId)).and("status").is(UserChatStatus.DELETED.name())),
+                new Update().set("status", UserChatStatus.NORMAL.name()),
+                UserChat.class
+        );
+    }
+
+    @Override
+    public void markChatSeen(String userInfoId, String chatId, String messageId, long version) {
+        mongoTemplate.updateFirst(
+                Query.query(Criteria.where("user_id").is(new ObjectId(userInfoId)).and("chat_id").is(new ObjectId(chatId))),
+                new Update()
+                        .set("unread_count", 0)
+                        .set("last_seen_message_id", messageId)
+                        .set("version", version),
+                UserChat.class
+        );
+    }
+
+    @Override
+    public Map<String, Integer> findUnreadCountsByChat(String chatId) {
+        Query query = Query.query(Criteria.where("chat_id").is(new ObjectId(chatId)));
+        query.fields().include("user_id", "unread_count");
+        Map<String, Integer> unreadCounts = new HashMap<>();
+        mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(UserChat.class)).forEach(document -> {
+            Number unreadCount = document.get("unread_count", Number.class);
+            unreadCounts.put(document.getObjectId("user_id").toHexString(), unreadCount == null ? 0 : unreadCount.intValue());
+        });
+        return unreadCounts;
+    }
+
+    @Override
+    public void updateChatSummary(UserChat userChat) {
+        mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(new ObjectId(userChat.getId()))),
+                new Update()
+                        .set("name", userChat.getName())
+                        .set("avatar", userChat.getAvatar())
+                        .set("group_id", userChat.getGroupId())
+                        .set("peer_id", userChat.getPeerId())
+                        .set("last_message", userChat.getLastMessage())
+                        .set("last_message_at", userChat.getLastMessageAt()),
+                UserChat.class
+        );
+    }
+
+    @Override
+    public void updateGroupChatSummary(String chatId, String name, String avatar, long version) {
+        mongoTemplate.updateMulti(
+                Query.query(Criteria.where("chat_id").is(new ObjectId(chatId))),
+                new Update()
+                        .set("name", name)
+                        .set("avatar", avatar)
+                        .set("version", version),
+                UserChat.class
+        );
+    }
+
+    @Override
+    public void updatePeerSummary(UserSummary profile, long version) {
+        mongoTemplate.updateMulti(
+                Query.query(Criteria.where("peer_id").is(profile.getId())),
+                new Update()
+                        .set("name", profile.getFirstName() + " " + profile.getLastName())
+                        .set("avatar", profile.getThumbnailAvatar())
+                        .set("version", version),
+                UserChat.class
+        );
+        mongoTemplate.updateMulti(
+                Query.query(Criteria.where("last_message.sender._id").is(new ObjectId(profile.getId()))),
+                new Update()
+                        .set("last_message.sender", profile)
+                        .set("version", version),
+                UserChat.class
+        );
+    }
+
+    @Override
+    public Page<UserChat> findChatList(String userInfoId, Pageable pageable) {
+        Criteria pinned = Criteria.where("user_id").is(new ObjectId(userInfoId)).and("status").is(UserChatStatus.PINNED.name());
+        Criteria others = Criteria.where("user_id").is(new ObjectId(userInfoId)).and("status").in(UserChatStatus.NORMAL.name(), UserChatStatus.HIDDEN.name());
+        Sort newestFirst = Sort.by(Sort.Direction.DESC, "last_message_at");
+        if (pageable.isUnpaged()) {
+            List<UserChat> userChats = new ArrayList<>(mongoTemplate.find(Query.query(pinned).with(newestFirst), UserChat.class));
+            userChats.addAll(mongoTemplate.find(Query.query(others).with(newestFirst), UserChat.class));
+            return new PageImpl<>(userChats);
+        }
+        // the page is a window over pinned entries followed by the others, read with one skip and limit per part
+        long pinnedCount = mongoTemplate.count(Query.query(pinned), UserChat.class);
+        List<UserChat> userChats = new ArrayList<>();
+        if (pageable.getOffset() < pinnedCount) {
+            userChats.addAll(mongoTemplate.find(Query.query(pinned).with(newestFirst).skip(pageable.getOffset()).limit(pageable.getPageSize()), UserChat.class));
+        }
+        int remaining = pageable.getPageSize() - userChats.size();
+        if (remaining > 0) {
+            long skip = Math.max(0, pageable.getOffset() - pinnedCount);
+            userChats.addAll(mongoTemplate.find(Query.query(others).with(newestFirst).skip(skip).limit(remaining), UserChat.class));
+        }
+        return PageableExecutionUtils.getPage(userChats, pageable, () -> pinnedCount + mongoTemplate.count(Query.query(others), UserChat.class));
+    }
+
+    @Override
+    public int sumUnreadCount(String userInfoId) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("user_id").is(new ObjectId(userInfoId)).and("status").ne(UserChatStatus.DELETED.name())),
+                Aggregation.group().sum("unread_count").as("total")
+        );
+        Document result = mongoTemplate.aggregate(aggregation, mongoTemplate.getCollectionName(UserChat.class), Document.class).getUniqueMappedResult();
+        Number total = result == null ? null : result.get("total", Number.class);
+        return total == null ? 0 : total.intValue();
+    }
+
+    @Override
+    public int migrateEmbeddedChats() {
+        Query query = Query.query(Criteria.where("chats.0").exists(true));
+        query.fields().include("_id", "chats");
+        List<Document> profiles = mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(UserInfo.class));
+        for (Document profile : profiles) {
+            ObjectId userId = profile.getObjectId("_id");
+            BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserChat.class);
+            for (Document chat : profile.getList("chats", Document.class)) {
+                Document lastMessage = chat.get("last_message", Document.class);
+                Update update = new Update();
+                chat.forEach((key, value) -> {
+                    if (!key.equals("chat_id")) {
+                        update.set(key, value);
+                    }
+                });
+                update.set("last_message_at", lastMessage == null ? chat.get("join_time") : lastMessage.get("created_at"));
+                bulkOperations.upsert(Query.query(Criteria.where("user_id").is(userId).and("chat_id").is(chat.get("chat_id"))), update);
+            }
+            bulkOperations.execute();
+            mongoTemplate.updateFirst(
+                    Query.query(Criteria.where("_id").is(userId)),
+                    new Update().unset("chats"),
+                    UserInfo.class
+            );
+        }
+        return profiles.size();
+    }
+}
@@ -7,11 +7,15 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 import vn.edu.iuh.models.User;
 import vn.edu.iuh.models.UserInfo;
+import vn.edu.iuh.models.UserSummary;
+import vn.edu.iuh.projections.*;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface UserInfoRepository extends MongoRepository<UserInfo, String> {
+public interface UserInfoRepository extends MongoRepository<UserInfo, String>, UserInfoRepositoryCustom {
     @Cacheable(value = "profiles", key = "#user.id")
     Optional<UserInfo> findByUser(User user);
     @Caching(
@@ -25,4 +29,14 @@ public interface UserInfoRepository extends MongoRepository<UserInfo, String> {
     @Cacheable(value = "profiles", key = "#id")
     @Override
     Optional<UserInfo> findById(String id);
+
+    // an account is bound to one profile for good, so the ID can be cached without eviction
+    @Cacheable(value = "profileIds", key = "#user.id")
+    Optional<UserInfoId> findIdByUser(User user);
+    Optional<ProfileCard> findProfileCardByUser(User user);
+    Optional<ProfileCard> findProfileCardById(String id);
+    Optional<UserSummary> findSummaryById(String id);
+    List<UserSummary> findSummariesByIdIn(Collection<String> ids);
+    Optional<UserInfoGroups> findGroupsById(String id);
+    Optional<UserInfoRecentSearches> findRecentSearchesById(String id);
 }
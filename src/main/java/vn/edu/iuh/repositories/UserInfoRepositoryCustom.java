@@ -0,0 +1,17 @@
+package vn.edu.iuh.repositories;
+
+import org.springframework.cache.annotation.CacheEvict;
+
+public interface UserInfoRepositoryCustom {
+    /**
+     * Move a profile to the end of the recent searches of another profile without loading either of them
+     */
+    @CacheEvict(value = "profiles", allEntries = true)
+    void addRecentSearch(String userInfoId, String searchedUserInfoId);
+
+    /**
+     * Remove a group from the groups of a profile without loading it
+     */
+    @CacheEvict(value = "profiles", allEntries = true)
+    void removeGroup(String userInfoId, String groupId);
+}
@@ -0,0 +1,27 @@
+package vn.edu.iuh.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import vn.edu.iuh.models.UserInfo;
+
+@RequiredArgsConstructor
+public class UserInfoRepositoryCustomImpl implements UserInfoRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void addRecentSearch(String userInfoId, String searchedUserInfoId) {
+        Query query = Query.query(Criteria.where("_id").is(new ObjectId(userInfoId)));
+        ObjectId searchedId = new ObjectId(searchedUserInfoId);
+        mongoTemplate.updateFirst(query, new Update().pull("recent_searches", searchedId), UserInfo.class);
+        mongoTemplate.updateFirst(query, new Update().push("recent_searches", searchedId), UserInfo.class);
+    }
+
+    @Override
+    public void removeGroup(String userInfoId, String groupId) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(new ObjectId(userInfoId))), new Update().pull("groups", new ObjectId(groupId)), UserInfo.class);
+    }
+}
@@ -0,0 +1,104 @@
+package vn.edu.iuh.repositories;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.convert.LazyLoadingProxy;
+import org.springframework.stereotype.Component;
+import vn.edu.iuh.models.LastMessage;
+import vn.edu.iuh.models.MessageSummary;
+import vn.edu.iuh.models.UserInfo;
+import vn.edu.iuh.models.UserSummary;
+import vn.edu.iuh.utils.ReferenceUtil;
+
+import java.util.*;
+
+/**
+ * Bounded LRU cache of {@link UserSummary} by profile ID, used to render senders and reactors without loading the
+ * whole profile. Missing entries are read with a projection of the five summary fields
+ */
+@Component
+@Slf4j
+public class UserSummaryCache {
+    private final UserInfoRepository userInfoRepository;
+    private final Map<String, UserSummary> summaries;
+
+    public UserSummaryCache(UserInfoRepository userInfoRepository, @Value("${app.user-summary-cache.max-size:10000}") int maxSize) {
+        this.userInfoRepository = userInfoRepository;
+        this.summaries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserSummary> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    /**
+     * Summary of a referenced profile. A lazy reference is never resolved, a loaded profile is summarized directly
+     */
+    public UserSummary get(UserInfo reference) {
+        String id = ReferenceUtil.idOf(reference);
+        if (id == null) {
+            return null;
+        }
+        UserSummary summary = summaries.get(id);
+        if (summary != null) {
+            return summary;
+        }
+        if (reference instanceof LazyLoadingProxy) {
+            summary = userInfoRepository.findSummaryById(id).orElse(null);
+        } else {
+            summary = UserSummary.from(reference);
+        }
+        if (summary != null) {
+            summaries.put(id, summary);
+        }
+        return summary;
+    }
+
+    /**
+     * Summary of a profile by ID, read with the summary projection when it is not cached
+     */
+    public UserSummary getById(String id) {
+        return getAll(List.of(id)).get(id);
+    }
+
+    /**
+     * Summaries of several profiles, the missing ones are loaded with a single query
+     */
+    public Map<String, UserSummary> getAll(Collection<String> ids) {
+        Map<String, UserSummary> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        ids.forEach(id -> {
+            UserSummary summary = summaries.get(id);
+            if (summary != null) {
+                result.put(id, summary);
+            } else if (id != null) {
+                missing.add(id);
+            }
+        });
+        if (!missing.isEmpty()) {
+            userInfoRepository.findSummariesByIdIn(missing).forEach(summary -> {
+                summaries.put(summary.getId(), summary);
+                result.put(summary.getId(), summary);
+            });
+        }
+        return result;
+    }
+
+    /**
+     * {@link MessageSummary#from(LastMessage)} with the sender taken from the cache
+     */
+    public MessageSummary summarize(LastMessage lastMessage) {
+        if (lastMessage == null) {
+            return null;
+        }
+        return MessageSummary.from(lastMessage, get(lastMessage.getSender()));
+    }
+
+    /**
+     * Replace the cached summary after the profile changed
+     */
+    public void put(UserSummary summary) {
+        summaries.put(summary.getId(), summary);
+    }
+}
@@ -2,12 +2,19 @@ package vn.edu.iuh.services;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import vn.edu.iuh.dto.CursorPageDTO;
 import vn.edu.iuh.dto.MessageDTO;
 import vn.edu.iuh.dto.MessageEventDTO;
+import vn.edu.iuh.dto.MessageFilterDTO;
 import vn.edu.iuh.dto.MessageRequestDTO;
+import vn.edu.iuh.dto.MessageSearchHitDTO;
+import vn.edu.iuh.dto.MessageWindowDTO;
 import vn.edu.iuh.dto.ReactionMessageDTO;
 import vn.edu.iuh.models.Chat;
+import vn.edu.iuh.models.ChatAttachment;
 import vn.edu.iuh.models.Message;
+import vn.edu.iuh.models.Reaction;
+import vn.edu.iuh.models.enums.AttachmentType;
 import vn.edu.iuh.security.UserPrincipal;
 
 public interface ChatService {
@@ -30,6 +37,16 @@ public interface ChatService {
     Message reactionMessage(String messageId, String chatId, UserPrincipal userPrincipal, ReactionMessageDTO reactionMessageDTO);
     Message deleteReactionsMessage(String messageId, String chatId, UserPrincipal userPrincipal);
 
+    Page<Reaction> findReactions(String messageId, String chatId, UserPrincipal userPrincipal, Pageable pageable);
+
+    CursorPageDTO<Message> filterMessages(String chatId, UserPrincipal userPrincipal, MessageFilterDTO filter);
+
+    MessageWindowDTO findMessagesAround(String chatId, String messageId, UserPrincipal userPrincipal, int count);
+
+    CursorPageDTO<ChatAttachment> findAttachments(String chatId, UserPrincipal userPrincipal, AttachmentType type, String cursor, int size);
+
+    Page<MessageSearchHitDTO> searchMessages(UserPrincipal userPrincipal, String content, Pageable pageable);
+
     String seenMessage(String chatId, UserPrincipal userPrincipal);
 
     void seenMessage(String chatId, String userInfoId);
@@ -0,0 +1,24 @@
+package vn.edu.iuh.services;
+
+import org.springframework.data.domain.Page;
+import vn.edu.iuh.models.Message;
+
+import java.time.LocalDateTime;
+
+public interface MessageArchiveService {
+    /**
+     * Move the messages older than the configured age of a few chats into archive segments
+     *
+     * @return number of written segments
+     */
+    int archiveOldMessages();
+
+    /**
+     * Extend a history page of the messages left in a chat with its archived messages. The total counts both, and the
+     * part of the page past the messages left in the chat is filled from the newest segments
+     *
+     * @param page page of the messages left in the chat, counted from the newest
+     * @param after time the caller cleared the chat history or null
+     */
+    Page<Message> appendArchivedMessages(String chatId, String userInfoId, LocalDateTime after, Page<Message> page);
+}
@@ -0,0 +1,11 @@
+package vn.edu.iuh.services;
+
+public interface MessageCompactionService {
+    /**
+     * Strip the payload of messages recalled before the recall window ended and drop the messages every member
+     * deleted, in the next few chats
+     *
+     * @return bytes reclaimed in the chat documents
+     */
+    long compact();
+}
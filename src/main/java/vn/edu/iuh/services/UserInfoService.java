@@ -1,7 +1,10 @@
 package vn.edu.iuh.services;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import vn.edu.iuh.dto.*;
 import vn.edu.iuh.models.UserInfo;
+import vn.edu.iuh.models.enums.FriendStatus;
 import vn.edu.iuh.security.UserPrincipal;
 
 import java.util.List;
@@ -11,6 +14,9 @@ public interface UserInfoService {
     UserInfo findUserInfo(String phone);
     UserInfo findById(String id);
     UserInfo findUserInfoByUserId(String userId);
+    String findUserInfoIdByUserId(String userId);
+    Page<FriendDTO> findFriendsByUserId(String userId, FriendStatus status, Pageable pageable);
+    List<UserInfo> findRecentSearchesByUserId(String userId);
 
     List<GroupDTO> findAllGroupToUserInfoByUserId(String userId);
     List<GroupDTO> findAllGroupToUserInfoByUserInfoId(String userInfoId);
@@ -29,6 +35,7 @@ public interface UserInfoService {
     String declineFriendRequest(String friendId, UserPrincipal userPrincipal);
     String cancelFriendRequest(String friendId, UserPrincipal userPrincipal);
 
-    List<ChatRoomDTO> getAllChats(UserPrincipal userPrincipal);
+    Page<ChatRoomDTO> getAllChats(UserPrincipal userPrincipal, Long since, Pageable pageable);
+    int countUnreadMessages(UserPrincipal userPrincipal);
     ChatRoomDTO updateUserChat(UserPrincipal userPrincipal, String chatId, UserChatUpdateDTO userChatUpdateDTO);
 }
@@ -6,31 +6,63 @@ import org.bson.types.ObjectId;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import vn.edu.iuh.dto.ChatListDeltaDTO;
+import vn.edu.iuh.dto.CursorPageDTO;
 import vn.edu.iuh.dto.MessageDTO;
 import vn.edu.iuh.dto.MessageEventDTO;
+import vn.edu.iuh.dto.MessageFilterDTO;
+import vn.edu.iuh.dto.MessagePinnedDTO;
+import vn.edu.iuh.dto.MessageRecalledDTO;
 import vn.edu.iuh.dto.MessageRequestDTO;
+import vn.edu.iuh.dto.MessageSearchHitDTO;
+import vn.edu.iuh.dto.MessageWindowDTO;
+import vn.edu.iuh.dto.ReactionChangedDTO;
 import vn.edu.iuh.dto.ReactionMessageDTO;
 import vn.edu.iuh.exceptions.DataNotFoundException;
 import vn.edu.iuh.exceptions.InvalidRequestException;
 import vn.edu.iuh.exceptions.MessageRecallTimeExpiredException;
 import vn.edu.iuh.models.*;
+import vn.edu.iuh.models.enums.AttachmentType;
 import vn.edu.iuh.models.enums.MessageStatus;
 import vn.edu.iuh.models.enums.MessageType;
+import vn.edu.iuh.models.enums.ReactionType;
 import vn.edu.iuh.models.enums.UserChatStatus;
+import vn.edu.iuh.repositories.ChatAttachmentRepository;
 import vn.edu.iuh.repositories.ChatRepository;
+import vn.edu.iuh.repositories.MessageArchiveRepository;
+import vn.edu.iuh.repositories.MessageTailCache;
+import vn.edu.iuh.repositories.ReferenceResolver;
+import vn.edu.iuh.repositories.ReplyPreviewCache;
+import vn.edu.iuh.repositories.SearchableMessageRepository;
+import vn.edu.iuh.repositories.SequenceRepository;
+import vn.edu.iuh.repositories.UnitOfWork;
+import vn.edu.iuh.repositories.UserChatRepository;
 import vn.edu.iuh.repositories.UserInfoRepository;
+import vn.edu.iuh.repositories.UserSummaryCache;
 import vn.edu.iuh.security.UserPrincipal;
 import vn.edu.iuh.services.ChatService;
+import vn.edu.iuh.services.MessageArchiveService;
+import vn.edu.iuh.utils.ReferenceUtil;
+import vn.edu.iuh.utils.TextUtil;
+import vn.edu.iuh.ws.ChatListPublisher;
+import vn.edu.iuh.ws.ReactionPublisher;
 
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.IntStream;
 
 @Service
 @RequiredArgsConstructor
@@ -38,56 +70,85 @@ import java.util.Optional;
 public class ChatServiceImpl implements ChatService {
     private final ChatRepository chatRepository;
     private final UserInfoRepository userInfoRepository;
+    private final UserChatRepository userChatRepository;
+    private final SearchableMessageRepository searchableMessageRepository;
+    private final ChatAttachmentRepository chatAttachmentRepository;
+    private final UserSummaryCache userSummaryCache;
+    private final SequenceRepository sequenceRepository;
+    private final ReferenceResolver referenceResolver;
+    private final ReplyPreviewCache replyPreviewCache;
+    private final MessageTailCache messageTailCache;
+    private final MessageArchiveRepository messageArchiveRepository;
+    private final MessageArchiveService messageArchiveService;
     private final SimpMessagingTemplate simpMessagingTemplate;
+    private final ChatListPublisher chatListPublisher;
+    private final ReactionPublisher reactionPublisher;
 
     private void checkChatMembership(Chat chat, UserInfo sender) {
-        if ((chat.getGroup() == null && !chat.getMembers().contains(sender)) ||
-                (chat.getGroup() != null && !chat.getGroup().getMembers().contains(GroupMember.builder().profile(sender).build()))) {
+        if ((chat.getGroup() == null && !ReferenceUtil.idsOf(chat.getMembers()).contains(sender.getId())) ||
+                (chat.getGroup() != null && chat.getGroup().getMembers().stream().noneMatch(groupMember -> sender.getId().equals(groupMember.getProfileId())))) {
             throw new AccessDeniedException("Bạn không phải là thành viên của phòng chat này");
         }
     }
 
     @Override
     public Page<Message> getAllMessages(String chatId, UserPrincipal userPrincipal, Pageable pageable, String content) {
-        UserInfo senderInfo = findUserInfoByUserPrincipal(userPrincipal);
-        Chat chat = findById(chatId);
+        UserInfo senderInfo = findUserInfoReference(userPrincipal);
+        Chat chat = chatRepository.findHeader(chatId).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + chatId));
 
-        UserChat userChat = senderInfo.getChats().stream()
-                .filter(userChat1 -> userChat1.getChat().getId().equals(chatId))
-                .findFirst()
-                .get();
+        UserChat userChat = userChatRepository.findByUserAndChat(senderInfo, chat).orElseThrow(() -> new AccessDeniedException("Bạn không phải là thành viên của phòng chat này"));
 
         checkChatMembership(chat, senderInfo);
 
-        List<Message> messages = chat.getMessages().stream()
-                .filter(message -> userChat.getLastDeleteChatTime() == null || message.getCreatedAt().isAfter(userChat.getLastDeleteChatTime()))
-                .filter(message -> !message.getDeleteBy().contains(senderInfo))
-                .filter(message -> content == null || message.getContent().toLowerCase().contains(content.toLowerCase()))
-                .peek(message -> {
-                    if (message.getStatus().equals(MessageStatus.UNSEND)) {
-                        message.setContent("Tin nhắn đã bị thu hồi");
-                        message.setAttachments(null);
-                        message.setReactions(null);
-                    }
-                })
-                .toList();
+        if (content != null && !TextUtil.tokenize(content).isEmpty()) {
+            Page<String> ids = searchableMessageRepository.findMessageIds(chatId, TextUtil.tokenize(content), senderInfo.getId(), userChat.getLastDeleteChatTime(), pageable);
+            // hits of a page are oldest first like the history
+            List<String> pageIds = new ArrayList<>(ids.getContent());
+            Collections.reverse(pageIds);
+            Page<Message> hits = new PageImpl<>(findMessages(chatId, pageIds), pageable, ids.getTotalElements());
+            referenceResolver.resolveSenders(hits.getContent());
+            replyPreviewCache.resolve(chat, hits.getContent());
+            return hits;
+        }
 
-        int pageSize = pageable.getPageSize();
-        int pageNumber = pageable.getPageNumber();
-        int start = Math.max(0, messages.size() - pageSize - (pageNumber * pageSize));
-        int end = messages.size() - (pageNumber * pageSize);
-        List<Message> responseMessage = messages.subList(start, end);
-        return new PageImpl<>(responseMessage, pageable, messages.size());
+        Page<Message> page = pageable.getPageNumber() == 0 ? findLatestPage(chatId, senderInfo.getId(), userChat.getLastDeleteChatTime(), pageable) : null;
+        if (page == null) {
+            page = chatRepository.findMessagePage(chatId, senderInfo.getId(), userChat.getLastDeleteChatTime(), pageable);
+        }
+        page = messageArchiveService.appendArchivedMessages(chatId, senderInfo.getId(), userChat.getLastDeleteChatTime(), page);
+        page.forEach(this::hideRecalledContent);
+        referenceResolver.resolveSenders(page.getContent());
+        replyPreviewCache.resolve(chat, page.getContent());
+        return page;
+    }
+
+    /**
+     * First history page served from {@link MessageTailCache}, or null when the messages the user can see there do not
+     * fill it. The total is only counted on the server when the tail does not hold the whole history
+     */
+    private Page<Message> findLatestPage(String chatId, String userInfoId, LocalDateTime after, Pageable pageable) {
+        MessageTailCache.Tail tail = messageTailCache.get(chatId);
+        List<Message> messages = tail.messages().stream()
+                .filter(message -> after == null || message.getCreatedAt().isAfter(after))
+                .filter(message -> !ReferenceUtil.idsOf(message.getDeleteBy()).contains(userInfoId))
+                .toList();
+        if (messages.size() < pageable.getPageSize() && !tail.complete()) {
+            return null;
+        }
+        List<Message> content = messages.subList(Math.max(0, messages.size() - pageable.getPageSize()), messages.size()).stream()
+                .map(Message::copy)
+                .toList();
+        return PageableExecutionUtils.getPage(content, pageable, () -> tail.complete() ? messages.size() : chatRepository.countMessages(chatId, userInfoId, after));
     }
 
     @Override
     public Chat findById(String id) {
-        return chatRepository.findById(id).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + id));
+        return UnitOfWork.find(Chat.class, id, chatRepository::findById).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + id));
     }
 
     @Override
     public Message saveMessage(MessageDTO messageDTO, String chatId) {
-        UserInfo sender = userInfoRepository.findById(messageDTO.getSender()).orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy người dùng"));
+        UserInfo sender = UnitOfWork.find(UserInfo.class, messageDTO.getSender(), userInfoRepository::findById).orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy người dùng"));
         Message message = Message.builder()
                 .messageId(new ObjectId())
                 .replyMessageId(messageDTO.getReplyMessageId() != null ? new ObjectId(messageDTO.getReplyMessageId()) : null)
@@ -99,28 +160,23 @@ public class ChatServiceImpl implements ChatService {
                 .createdAt(LocalDateTime.now())
                 .updatedAt(LocalDateTime.now())
                 .build();
-        Chat chat = chatRepository.findById(chatId).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + chatId));
-        if (chat.getMessages() == null) {
-            chat.setMessages(new ArrayList<>());
-        }
-        List<Message> messages = new ArrayList<>(chat.getMessages());
-        messages.add(message);
-        chat.setMessages(messages);
+        Chat chat = chatRepository.findHeader(chatId).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + chatId));
         LastMessage lastMessage = buildLastMessage(message, sender);
 
         chat.setLastMessage(lastMessage);
-        chatRepository.save(chat);
-        int index = sender.getChats().indexOf(UserChat.builder().chat(chat).build());
-        UserChat userChat = sender.getChats().get(index);
-        userChat.setLastSeenMessageId(message.getMessageId());
-        userInfoRepository.save(sender);
+        chatRepository.appendMessage(chatId, message, lastMessage, false);
+        messageTailCache.append(chatId, message);
+        indexMessage(chatId, message);
+        publishChatListDelta(chat, sender);
+        replyPreviewCache.resolve(chat, List.of(message));
         return message;
     }
 
     @Override
     public Message saveMessage(MessageRequestDTO messageRequestDTO, String chatId, UserPrincipal userPrincipal) {
         UserInfo senderInfo = findUserInfoByUserPrincipal(userPrincipal);
-        Chat chat = chatRepository.findById(chatId).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + chatId));
+        // the messages are not needed, the new one is pushed at the end
+        Chat chat = chatRepository.findHeader(chatId).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + chatId));
         checkChatMembership(chat, senderInfo);
         Message message = Message.builder()
                 .messageId(new ObjectId())
@@ -133,41 +189,34 @@ public class ChatServiceImpl implements ChatService {
                 .createdAt(LocalDateTime.now())
                 .updatedAt(LocalDateTime.now())
                 .build();
-        List<Message> messages = new ArrayList<>(chat.getMessages());
-        messages.add(message);
-        chat.setMessages(messages);
         LastMessage lastMessage = buildLastMessage(message, senderInfo);
         chat.setLastMessage(lastMessage);
 
-        //
-        chat.getDeleteBy().forEach((userInfoIdDeleted) -> {
-            UserInfo userInfoDeleted = userInfoRepository.findById(userInfoIdDeleted).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng"));
-            userInfoDeleted.getChats().stream()
-                    .filter(userChat -> userChat.getChat().getId().equals(chatId))
-                    .findFirst()
-                    .map(userChat -> {
-                        userChat.setStatus(UserChatStatus.NORMAL);
-                        return userChat;
-                    });
-            userInfoRepository.save(userInfoDeleted);
-        });
-        chat.setDeleteBy(new ArrayList<>());
+        boolean restore = !chat.getDeleteBy().isEmpty();
+        if (restore) {
+            userChatRepository.restoreDeletedChats(chatId);
+            chat.setDeleteBy(new ArrayList<>());
+        }
 
-        chatRepository.save(chat);
+        chatRepository.appendMessage(chatId, message, lastMessage, restore);
+        messageTailCache.append(chatId, message);
+        indexMessage(chatId, message);
+        publishChatListDelta(chat, senderInfo);
+        replyPreviewCache.resolve(chat, List.of(message));
         simpMessagingTemplate.convertAndSend("/chatroom/" + chatId, message);
         return message;
     }
 
     @Override
     public Message unsendMessage(String messageId, String chatId, UserPrincipal userPrincipal) {
-        UserInfo sender = findUserInfoByUserPrincipal(userPrincipal);
-        Chat chat = chatRepository.findById(chatId).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + chatId));
+        UserInfo sender = findUserInfoReference(userPrincipal);
+        Chat chat = UnitOfWork.find(Chat.class, chatId, chatRepository::findById).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + chatId));
 
         checkChatMembership(chat, sender);
 
-        int messageIndex = chat.getMessages().indexOf(Message.builder().messageId(new ObjectId(messageId)).build());
+        int messageIndex = chat.indexOfMessage(messageId);
         if (messageIndex < 0) {
-            throw new DataNotFoundException("Không tìm thấy tin nhắn");
+            throw archivedRecallError(chatId, messageId, sender);
         }
         Message message = chat.getMessages().get(messageIndex);
         if (!message.getSender().equals(sender)) {
@@ -177,55 +226,52 @@ public class ChatServiceImpl implements ChatService {
             throw new MessageRecallTimeExpiredException("Bạn chỉ có thể thu hồi tin nhắn trong 1 ngày sau khi gửi.");
         }
         message.setStatus(MessageStatus.UNSEND);
+        chat.getPinnedMessageIds().remove(new ObjectId(message.getMessageId()));
         chatRepository.save(chat);
+        searchableMessageRepository.deleteById(message.getMessageId());
+        replyPreviewCache.evict(message.getMessageId());
+        chatAttachmentRepository.deleteAllByMessageId(message.getMessageId());
         message.setContent("Tin nhắn đã bị thu hồi");
         message.setReactions(null);
+        message.setReactionCounts(null);
+        message.setRecentReactors(null);
         message.setAttachments(null);
-        simpMessagingTemplate.convertAndSend("/chatroom/" + chatId, message);
+        simpMessagingTemplate.convertAndSend("/chatroom/" + chatId, MessageRecalledDTO.builder()
+                .messageId(message.getMessageId())
+                .content(message.getContent())
+                .build());
         return message;
     }
 
     @Override
     public String deleteMessage(String messageId, String chatId, UserPrincipal userPrincipal) {
-        UserInfo sender = userInfoRepository.findByUser(new User(userPrincipal.getId())).orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy người dùng"));
-        Chat chat = chatRepository.findById(chatId).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + chatId));
+        UserInfo sender = findUserInfoReference(userPrincipal);
+        Chat chat = UnitOfWork.find(Chat.class, chatId, chatRepository::findById).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + chatId));
         checkChatMembership(chat, sender);
 
-        int messageIndex = chat.getMessages().indexOf(Message.builder().messageId(new ObjectId(messageId)).build());
-        if (messageIndex < 0) {
-            throw new DataNotFoundException("Không tìm thấy tin nhắn");
-        }
-        Message message = chat.getMessages().get(messageIndex);
-        message.getDeleteBy().add(sender);
-        chatRepository.save(chat);
+        deleteMessageFor(chat, messageId, sender);
         return "Xóa tin nhắn thành công";
     }
 
     @Override
     public void deleteMessage(MessageEventDTO messageEventDTO, String chatId) {
-        UserInfo sender = userInfoRepository.findById(messageEventDTO.getSenderId()).orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy người dùng"));
-        Chat chat = chatRepository.findById(chatId).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + chatId));
+        UserInfo sender = UnitOfWork.find(UserInfo.class, messageEventDTO.getSenderId(), userInfoRepository::findById).orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy người dùng"));
+        Chat chat = UnitOfWork.find(Chat.class, chatId, chatRepository::findById).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + chatId));
         checkChatMembership(chat, sender);
 
-        int messageIndex = chat.getMessages().indexOf(Message.builder().messageId(new ObjectId(messageEventDTO.getMessageId())).build());
-        if (messageIndex < 0) {
-            throw new DataNotFoundException("Không tìm thấy tin nhắn");
-        }
-        Message message = chat.getMessages().get(messageIndex);
-        message.getDeleteBy().add(sender);
-        chatRepository.save(chat);
+        deleteMessageFor(chat, messageEventDTO.getMessageId(), sender);
     }
 
     @Override
     public String deleteAllMessages(UserPrincipal userPrincipal, String chatId) {
-        UserInfo senderInfo = findUserInfoByUserPrincipal(userPrincipal);
-        Optional<UserChat> chatToUpdate = senderInfo.getChats().stream()
-                .filter(userChat -> userChat.getChat().getId().equals(chatId))
-                .findFirst();
+        UserInfo senderInfo = findUserInfoReference(userPrincipal);
+        Optional<UserChat> chatToUpdate = userChatRepository.findByUserAndChat(senderInfo, Chat.builder().id(chatId).build());
         if (chatToUpdate.isPresent()) {
             UserChat userChat = chatToUpdate.get();
             userChat.setLastDeleteChatTime(LocalDateTime.now());
-            userInfoRepository.save(senderInfo);
+            userChat.setUnreadCount(0);
+            userChat.setVersion(sequenceRepository.next(SequenceRepository.USER_CHAT_VERSION));
+            userChatRepository.save(userChat);
             return "Xóa lịch sử trò chuyện thành công";
         }
         throw new DataNotFoundException("Không tìm thấy phòng chat");
@@ -233,13 +279,13 @@ public class ChatServiceImpl implements ChatService {
 
     @Override
     public Message unsendMessage(MessageEventDTO messageEventDTO, String chatId) {
-        UserInfo userInfo = userInfoRepository.findById(messageEventDTO.getSenderId()).orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy người dùng"));
-        Chat chat = chatRepository.findById(chatId).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + chatId));
+        UserInfo userInfo = UnitOfWork.find(UserInfo.class, messageEventDTO.getSenderId(), userInfoRepository::findById).orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy người dùng"));
+        Chat chat = UnitOfWork.find(Chat.class, chatId, chatRepository::findById).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + chatId));
         checkChatMembership(chat, userInfo);
 
-        int messageIndex = chat.getMessages().indexOf(Message.builder().messageId(new ObjectId(messageEventDTO.getMessageId())).build());
+        int messageIndex = chat.indexOfMessage(messageEventDTO.getMessageId());
         if (messageIndex < 0) {
-            throw new DataNotFoundException("Không tìm thấy tin nhắn");
+            throw archivedRecallError(chatId, messageEventDTO.getMessageId(), userInfo);
         }
         Message message = chat.getMessages().get(messageIndex);
         if (!message.getSender().equals(userInfo)) {
@@ -249,75 +295,182 @@ public class ChatServiceImpl implements ChatService {
             throw new MessageRecallTimeExpiredException("Bạn chỉ có thể thu hồi tin nhắn trong 1 ngày sau khi gửi.");
         }
         message.setStatus(MessageStatus.UNSEND);
+        chat.getPinnedMessageIds().remove(new ObjectId(message.getMessageId()));
         chatRepository.save(chat);
+        searchableMessageRepository.deleteById(message.getMessageId());
+        replyPreviewCache.evict(message.getMessageId());
+        chatAttachmentRepository.deleteAllByMessageId(message.getMessageId());
         message.setContent("Tin nhắn đã bị thu hồi");
         message.setReactions(null);
+        message.setReactionCounts(null);
+        message.setRecentReactors(null);
         message.setAttachments(null);
-        simpMessagingTemplate.convertAndSend("/chatroom/" + chatId, message);
+        simpMessagingTemplate.convertAndSend("/chatroom/" + chatId, MessageRecalledDTO.builder()
+                .messageId(message.getMessageId())
+                .content(message.getContent())
+                .build());
         return message;
     }
 
     @Override
     public Message reactionMessage(String messageId, String chatId, UserPrincipal userPrincipal, ReactionMessageDTO reactionMessageDTO) {
         Chat chat = findById(chatId);
-        UserInfo sender = findUserInfoByUserPrincipal(userPrincipal);
+        UserInfo sender = findUserInfoReference(userPrincipal);
         checkChatMembership(chat, sender);
-        int messageIndex = chat.getMessages().indexOf(Message.builder().messageId(new ObjectId(messageId)).build());
-        if (messageIndex < 0) {
-            throw new DataNotFoundException("Không tìm thấy tin nhắn");
-        }
-        Message message = chat.getMessages().get(messageIndex);
-        List<Reaction> reactions = message.getReactions();
-        Reaction reaction = new Reaction(sender, reactionMessageDTO.getType(), reactionMessageDTO.getQuantity());
-        if (reactions.contains(reaction)) {
-            int index = reactions.indexOf(reaction);
-            Reaction existingReaction = reactions.remove(index);
-            existingReaction.setQuantity(existingReaction.getQuantity() + reaction.getQuantity());
-            reactions.add(0, existingReaction);
-        } else {
-            reactions.add(0, reaction);
-        }
-        chatRepository.save(chat);
-        simpMessagingTemplate.convertAndSend("/chatroom/" + chatId, message);
+        findMessage(chat, messageId);
+        reactionPublisher.publish(chatId, messageId, sender.getId(), reactionMessageDTO.getType(), reactionMessageDTO.getQuantity());
+
+        // the cached chat is left as stored, a save of it before the flush would otherwise write the tap twice
+        Message message = reactionPublisher.applyPending(chatId, chatRepository.findMessage(chatId, messageId).orElseThrow(() -> new DataNotFoundException("Không tìm thấy tin nhắn")));
+        referenceResolver.resolveSenders(List.of(message));
         return message;
     }
 
     @Override
     public Message deleteReactionsMessage(String messageId, String chatId, UserPrincipal userPrincipal) {
         Chat chat = findById(chatId);
-        UserInfo sender = userInfoRepository.findByUser(new User(userPrincipal.getId())).orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy người dùng"));
+        UserInfo sender = findUserInfoReference(userPrincipal);
         checkChatMembership(chat, sender);
-        int messageIndex = chat.getMessages().indexOf(Message.builder().messageId(new ObjectId(messageId)).build());
-        if (messageIndex < 0) {
-            throw new DataNotFoundException("Không tìm thấy tin nhắn");
-        }
-        Message message = chat.getMessages().get(messageIndex);
-        List<Reaction> reactions = message.getReactions();
-        reactions.removeIf(reaction -> reaction.getUser().equals(sender));
-        chatRepository.save(chat);
-        simpMessagingTemplate.convertAndSend("/chatroom/" + chatId, message);
+        findMessage(chat, messageId);
+        reactionPublisher.discard(chatId, messageId, sender.getId());
+
+        Map<ReactionType, Integer> quantities = new EnumMap<>(ReactionType.class);
+        chatRepository.findMessage(chatId, messageId).ifPresent(storedMessage -> storedMessage.getReactions().stream()
+                .filter(reaction -> sender.getId().equals(ReferenceUtil.idOf(reaction.getUser())))
+                .forEach(reaction -> quantities.merge(reaction.getType(), reaction.getQuantity(), Integer::sum)));
+        chatRepository.removeReactions(chatId, messageId, sender.getId(), quantities);
+        messageTailCache.evict(chatId);
+
+        Message message = reactionPublisher.applyPending(chatId, chatRepository.findMessage(chatId, messageId).orElseThrow(() -> new DataNotFoundException("Không tìm thấy tin nhắn")));
+        referenceResolver.resolveSenders(List.of(message));
+
+        simpMessagingTemplate.convertAndSend("/chatroom/" + chatId, ReactionChangedDTO.builder()
+                .messageId(messageId)
+                .userId(sender.getId())
+                .reactionCounts(message.getReactionCounts())
+                .build());
         return message;
     }
 
+    @Override
+    public Page<Reaction> findReactions(String messageId, String chatId, UserPrincipal userPrincipal, Pageable pageable) {
+        Chat chat = findById(chatId);
+        UserInfo userInfo = findUserInfoReference(userPrincipal);
+        checkChatMembership(chat, userInfo);
+        findMessage(chat, messageId);
+        Page<Reaction> reactions = chatRepository.findReactions(chatId, messageId, pageable);
+        userSummaryCache.getAll(reactions.stream().map(reaction -> ReferenceUtil.idOf(reaction.getUser())).toList());
+        return reactions;
+    }
+
+    @Override
+    public CursorPageDTO<Message> filterMessages(String chatId, UserPrincipal userPrincipal, MessageFilterDTO filter) {
+        UserInfo userInfo = findUserInfoReference(userPrincipal);
+        Chat chat = findById(chatId);
+        UserChat userChat = userChatRepository.findByUserAndChat(userInfo, chat).orElseThrow(() -> new AccessDeniedException("Bạn không phải là thành viên của phòng chat này"));
+        checkChatMembership(chat, userInfo);
+
+        List<String> ids = searchableMessageRepository.findMessageIds(chatId, filter, userInfo.getId(), userChat.getLastDeleteChatTime());
+        boolean hasNext = ids.size() > filter.getSize();
+        List<String> pageIds = hasNext ? ids.subList(0, filter.getSize()) : ids;
+        List<Message> content = findMessages(chatId, pageIds);
+        referenceResolver.resolveSenders(content);
+        replyPreviewCache.resolve(chat, content);
+        return CursorPageDTO.<Message>builder()
+                .content(content)
+                .nextCursor(hasNext ? pageIds.get(pageIds.size() - 1) : null)
+                .hasNext(hasNext)
+                .build();
+    }
+
+    @Override
+    public MessageWindowDTO findMessagesAround(String chatId, String messageId, UserPrincipal userPrincipal, int count) {
+        UserInfo userInfo = findUserInfoReference(userPrincipal);
+        Chat chat = findById(chatId);
+        UserChat userChat = userChatRepository.findByUserAndChat(userInfo, chat).orElseThrow(() -> new AccessDeniedException("Bạn không phải là thành viên của phòng chat này"));
+        checkChatMembership(chat, userInfo);
+
+        List<Message> window = chatRepository.findMessagesAround(chatId, messageId, userInfo.getId(), userChat.getLastDeleteChatTime(), count);
+        int position = IntStream.range(0, window.size())
+                .filter(index -> window.get(index).getMessageId().equals(messageId))
+                .findFirst()
+                .orElseThrow(() -> new DataNotFoundException("Không tìm thấy tin nhắn"));
+        boolean hasOlder = position > count;
+        boolean hasNewer = window.size() - position - 1 > count;
+        List<Message> messages = new ArrayList<>(window.subList(hasOlder ? position - count : 0, hasNewer ? position + count + 1 : window.size()));
+        messages.forEach(this::hideRecalledContent);
+        referenceResolver.resolveSenders(messages);
+        replyPreviewCache.resolve(chat, messages);
+        return MessageWindowDTO.builder()
+                .messages(messages)
+                .hasOlder(hasOlder)
+                .hasNewer(hasNewer)
+                .build();
+    }
+
+    @Override
+    public CursorPageDTO<ChatAttachment> findAttachments(String chatId, UserPrincipal userPrincipal, AttachmentType type, String cursor, int size) {
+        UserInfo userInfo = findUserInfoReference(userPrincipal);
+        Chat chat = findById(chatId);
+        UserChat userChat = userChatRepository.findByUserAndChat(userInfo, chat).orElseThrow(() -> new AccessDeniedException("Bạn không phải là thành viên của phòng chat này"));
+        checkChatMembership(chat, userInfo);
+
+        List<ChatAttachment> attachments = chatAttachmentRepository.findPage(chatId, type, userInfo.getId(), userChat.getLastDeleteChatTime(), cursor, size);
+        boolean hasNext = attachments.size() > size;
+        List<ChatAttachment> content = hasNext ? attachments.subList(0, size) : attachments;
+        return CursorPageDTO.<ChatAttachment>builder()
+                .content(content)
+                .nextCursor(hasNext ? content.get(content.size() - 1).getId() : null)
+                .hasNext(hasNext)
+                .build();
+    }
+
+    @Override
+    public Page<MessageSearchHitDTO> searchMessages(UserPrincipal userPrincipal, String content, Pageable pageable) {
+        List<String> tokens = TextUtil.tokenize(content);
+        if (tokens.isEmpty()) {
+            return Page.empty(pageable);
+        }
+        UserInfo userInfo = findUserInfoReference(userPrincipal);
+        Map<String, UserChat> userChats = new HashMap<>();
+        Map<String, LocalDateTime> chats = new HashMap<>();
+        userChatRepository.findAllByUserAndStatusInOrderByLastMessageAtDesc(userInfo, List.of(UserChatStatus.PINNED, UserChatStatus.NORMAL, UserChatStatus.HIDDEN), Pageable.unpaged())
+                .forEach(userChat -> {
+                    userChats.put(userChat.getChatId(), userChat);
+                    chats.put(userChat.getChatId(), userChat.getLastDeleteChatTime());
+                });
+        if (chats.isEmpty()) {
+            return Page.empty(pageable);
+        }
+        Page<SearchableMessage> hits = searchableMessageRepository.search(String.join(" ", tokens), chats, userInfo.getId(), pageable);
+        Map<String, UserSummary> senders = userSummaryCache.getAll(hits.stream().map(SearchableMessage::getSenderId).distinct().toList());
+        return hits.map(hit -> MessageSearchHitDTO.builder()
+                .chatId(hit.getChatId())
+                .chatName(userChats.get(hit.getChatId()).getName())
+                .chatAvatar(userChats.get(hit.getChatId()).getAvatar())
+                .messageId(hit.getId())
+                .sender(senders.get(hit.getSenderId()))
+                .snippet(TextUtil.snippet(hit.getContent(), tokens, 40))
+                .createdAt(hit.getCreatedAt())
+                .score(hit.getScore() == null ? 0 : hit.getScore())
+                .build());
+    }
+
     @Override
     public String seenMessage(String chatId, UserPrincipal userPrincipal) {
-        UserInfo userInfo = findUserInfoByUserPrincipal(userPrincipal);
-        Chat chat = chatRepository.findById(chatId).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + chatId));
+        UserInfo userInfo = findUserInfoReference(userPrincipal);
+        Chat chat = UnitOfWork.find(Chat.class, chatId, chatRepository::findById).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + chatId));
         checkChatMembership(chat, userInfo);
-        int index = userInfo.getChats().indexOf(UserChat.builder().chat(chat).build());
-        userInfo.getChats().get(index).setLastSeenMessageId(chat.getMessages().get(chat.getMessages().size() - 1).getMessageId());
-        userInfoRepository.save(userInfo);
+        markChatSeen(chat, userInfo);
         return "Thành công";
     }
 
     @Override
     public void seenMessage(String chatId, String userInfoId) {
-        UserInfo userInfo = userInfoRepository.findById(userInfoId).orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy người dùng"));
+        UserInfo userInfo = UnitOfWork.find(UserInfo.class, userInfoId, userInfoRepository::findById).orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy người dùng"));
         Chat chat = findChatById(chatId);
         checkChatMembership(chat, userInfo);
-        int index = userInfo.getChats().indexOf(UserChat.builder().chat(chat).build());
-        userInfo.getChats().get(index).setLastSeenMessageId(chat.getMessages().get(chat.getMessages().size() - 1).getMessageId());
-        userInfoRepository.save(userInfo);
+        markChatSeen(chat, userInfo);
     }
 
     @Override
@@ -326,19 +479,16 @@ public class ChatServiceImpl implements ChatService {
         Chat chatroom = findChatById(chatId);
         checkChatMembership(chatroom, senderInfo);
 
-        Message messageToPin = chatroom.getMessages().stream()
-                .filter(msg -> msg.getMessageId().equals(messageId))
-                .findFirst()
-                .orElseThrow(() -> new DataNotFoundException("Không tìm thấy tin nhắn"));
+        findMessage(chatroom, messageId);
 
-        if (chatroom.getPinnedMessages().contains(messageToPin)) {
+        if (chatroom.isPinned(messageId)) {
             throw new InvalidRequestException("Tin nhắn đã được ghim trước đó");
         }
-        if (chatroom.getPinnedMessages().size() >= 3) {
+        if (chatroom.getPinnedMessageIds().size() >= 3) {
             throw new InvalidRequestException("Số lượng tin nhắn ghim tối đa là 3");
         }
 
-        chatroom.getPinnedMessages().add(messageToPin);
+        chatroom.getPinnedMessageIds().add(new ObjectId(messageId));
 
         Message messageEvent = Message.builder()
                 .messageId(new ObjectId())
@@ -349,26 +499,24 @@ public class ChatServiceImpl implements ChatService {
                 .build();
         chatroom.getMessages().add(messageEvent);
 
-        chatroom.getDeleteBy().forEach((userInfoIdDeleted) -> {
-            UserInfo userInfoDeleted = userInfoRepository.findById(userInfoIdDeleted).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng"));
-            userInfoDeleted.getChats().stream()
-                    .filter(userChat -> userChat.getChat().getId().equals(chatId))
-                    .findFirst()
-                    .map(userChat -> {
-                        userChat.setStatus(UserChatStatus.NORMAL);
-                        return userChat;
-                    });
-            userInfoRepository.save(userInfoDeleted);
-        });
-        chatroom.setDeleteBy(new ArrayList<>());
+        if (!chatroom.getDeleteBy().isEmpty()) {
+            userChatRepository.restoreDeletedChats(chatId);
+            chatroom.setDeleteBy(new ArrayList<>());
+        }
 
 
         LastMessage lastMessage = buildLastMessage(messageEvent, senderInfo);
         chatroom.setLastMessage(lastMessage);
 
         chatRepository.save(chatroom);
-
-        simpMessagingTemplate.convertAndSend("/chatroom/" + chatId, messageEvent);
+        publishChatListDelta(chatroom, senderInfo);
+
+        simpMessagingTemplate.convertAndSend("/chatroom/" + chatId, MessagePinnedDTO.builder()
+                .messageId(messageId)
+                .pinned(true)
+                .userId(senderInfo.getId())
+                .notice(messageEvent)
+                .build());
         return messageEvent;
     }
 
@@ -378,16 +526,13 @@ public class ChatServiceImpl implements ChatService {
         Chat chatroom = findChatById(chatId);
         checkChatMembership(chatroom, senderInfo);
 
-        Message messageToUnpin = chatroom.getMessages().stream()
-                .filter(msg -> msg.getMessageId().equals(messageId))
-                .findFirst()
-                .orElseThrow(() -> new DataNotFoundException("Không tìm thấy tin nhắn"));
+        findMessage(chatroom, messageId);
 
-        if (!chatroom.getPinnedMessages().contains(messageToUnpin)) {
+        if (!chatroom.isPinned(messageId)) {
             throw new InvalidRequestException("Tin nhắn không được ghim trước đó");
         }
 
-        chatroom.getPinnedMessages().remove(messageToUnpin);
+        chatroom.getPinnedMessageIds().remove(new ObjectId(messageId));
 
         Message messageEvent = Message.builder()
                 .messageId(new ObjectId())
@@ -399,28 +544,101 @@ public class ChatServiceImpl implements ChatService {
         chatroom.getMessages().add(messageEvent);
 
 
-        chatroom.getDeleteBy().forEach((userInfoIdDeleted) -> {
-            UserInfo userInfoDeleted = userInfoRepository.findById(userInfoIdDeleted).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng"));
-            userInfoDeleted.getChats().stream()
-                    .filter(userChat -> userChat.getChat().getId().equals(chatId))
-                    .findFirst()
-                    .map(userChat -> {
-                        userChat.setStatus(UserChatStatus.NORMAL);
-                        return userChat;
-                    });
-            userInfoRepository.save(userInfoDeleted);
-        });
-        chatroom.setDeleteBy(new ArrayList<>());
+        if (!chatroom.getDeleteBy().isEmpty()) {
+            userChatRepository.restoreDeletedChats(chatId);
+            chatroom.setDeleteBy(new ArrayList<>());
+        }
 
         LastMessage lastMessage = buildLastMessage(messageEvent, senderInfo);
         chatroom.setLastMessage(lastMessage);
 
         chatRepository.save(chatroom);
-
-        simpMessagingTemplate.convertAndSend("/chatroom/" + chatId, messageEvent);
+        publishChatListDelta(chatroom, senderInfo);
+
+        simpMessagingTemplate.convertAndSend("/chatroom/" + chatId, MessagePinnedDTO.builder()
+                .messageId(messageId)
+                .pinned(false)
+                .userId(senderInfo.getId())
+                .notice(messageEvent)
+                .build());
         return messageEvent;
     }
 
+    private void hideRecalledContent(Message message) {
+        if (message.getStatus().equals(MessageStatus.UNSEND)) {
+            message.setContent("Tin nhắn đã bị thu hồi");
+            message.setAttachments(null);
+            message.setReactions(null);
+            message.setReactionCounts(null);
+            message.setRecentReactors(null);
+        }
+    }
+
+    private void indexMessage(String chatId, Message message) {
+        searchableMessageRepository.save(SearchableMessage.from(chatId, message));
+        List<ChatAttachment> attachments = ChatAttachment.from(chatId, message);
+        if (!attachments.isEmpty()) {
+            chatAttachmentRepository.saveAll(attachments);
+        }
+    }
+
+    /**
+     * Messages of a chat in the order of the given IDs, from the chat then from the archive, missing ones skipped
+     */
+    private List<Message> findMessages(String chatId, List<String> messageIds) {
+        Map<String, Message> messages = new HashMap<>();
+        chatRepository.findMessages(chatId, messageIds).forEach(message -> messages.put(message.getMessageId(), message));
+        if (messages.size() < messageIds.size()) {
+            messageArchiveRepository.findMessages(chatId, messageIds.stream().filter(id -> !messages.containsKey(id)).toList())
+                    .forEach(message -> messages.put(message.getMessageId(), message));
+        }
+        return messageIds.stream()
+                .map(messages::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    /**
+     * Hide a message from one user, in the chat or in the archive segment holding it
+     */
+    private void deleteMessageFor(Chat chat, String messageId, UserInfo user) {
+        int messageIndex = chat.indexOfMessage(messageId);
+        if (messageIndex >= 0) {
+            chat.getMessages().get(messageIndex).getDeleteBy().add(user);
+            chatRepository.save(chat);
+        } else if (!messageArchiveRepository.addDeleteBy(chat.getId(), messageId, user.getId())) {
+            throw new DataNotFoundException("Không tìm thấy tin nhắn");
+        }
+        searchableMessageRepository.addDeleteBy(messageId, user.getId());
+        chatAttachmentRepository.addDeleteBy(messageId, user.getId());
+    }
+
+    /**
+     * Error for recalling a message that is not in the chat. Archived messages are older than the recall limit unless
+     * the archive age is set below it, they are never recalled
+     */
+    private RuntimeException archivedRecallError(String chatId, String messageId, UserInfo sender) {
+        Message message = messageArchiveRepository.findMessages(chatId, List.of(messageId)).stream().findFirst().orElse(null);
+        if (message == null) {
+            return new DataNotFoundException("Không tìm thấy tin nhắn");
+        }
+        if (!sender.getId().equals(ReferenceUtil.idOf(message.getSender()))) {
+            return new AccessDeniedException("Chỉ người gửi mới được thu hồi");
+        }
+        if (ChronoUnit.HOURS.between(message.getCreatedAt(), LocalDateTime.now()) > 24) {
+            return new MessageRecallTimeExpiredException("Bạn chỉ có thể thu hồi tin nhắn trong 1 ngày sau khi gửi.");
+        }
+        return new InvalidRequestException("Tin nhắn đã được lưu trữ nên không thể thu hồi");
+    }
+
+    private Message findMessage(Chat chat, String messageId) {
+        int messageIndex = chat.indexOfMessage(messageId);
+        if (messageIndex < 0) {
+            throw new DataNotFoundException("Không tìm thấy tin nhắn");
+        }
+        return chat.getMessages().get(messageIndex);
+    }
+
     private LastMessage buildLastMessage(Message message, UserInfo senderInfo) {
         return LastMessage.builder()
                 .messageId(message.getMessageId())
@@ -430,11 +648,46 @@ public class ChatServiceImpl implements ChatService {
                 .build();
     }
 
+    private void publishChatListDelta(Chat chat, UserInfo senderInfo) {
+        long version = sequenceRepository.next(SequenceRepository.USER_CHAT_VERSION);
+        MessageSummary lastMessage = userSummaryCache.summarize(chat.getLastMessage());
+        userChatRepository.appendChatMessage(chat.getId(), senderInfo.getId(), lastMessage, version);
+        userChatRepository.findUnreadCountsByChat(chat.getId()).forEach((userInfoId, unreadCount) ->
+                chatListPublisher.publish(userInfoId, ChatListDeltaDTO.builder()
+                        .chatId(chat.getId())
+                        .lastMessage(lastMessage)
+                        .unreadCount(unreadCount)
+                        .version(version)
+                        .build())
+        );
+    }
+
+    private void markChatSeen(Chat chat, UserInfo userInfo) {
+        long version = sequenceRepository.next(SequenceRepository.USER_CHAT_VERSION);
+        String lastMessageId = chat.getLastMessage() == null ? null : chat.getLastMessage().getMessageId();
+        userChatRepository.markChatSeen(userInfo.getId(), chat.getId(), lastMessageId, version);
+        chatListPublisher.publish(userInfo.getId(), ChatListDeltaDTO.builder()
+                .chatId(chat.getId())
+                .lastMessage(userSummaryCache.summarize(chat.getLastMessage()))
+                .unreadCount(0)
+                .version(version)
+                .build());
+    }
+
     private UserInfo findUserInfoByUserPrincipal(UserPrincipal userPrincipal) {
-        return userInfoRepository.findByUser(new User(userPrincipal.getId())).orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy người dùng"));
+        return userInfoRepository.findByUser(new User(userPrincipal.getId()))
+                .map(userInfo -> UnitOfWork.register(UserInfo.class, userInfo.getId(), userInfo))
+                .orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy người dùng"));
+    }
+
+    /**
+     * Profile holding only its ID, for membership checks and references that never need the rest of the profile
+     */
+    private UserInfo findUserInfoReference(UserPrincipal userPrincipal) {
+        return new UserInfo(userInfoRepository.findIdByUser(new User(userPrincipal.getId())).orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy người dùng")).getId());
     }
 
     private Chat findChatById(String chatId) {
-        return chatRepository.findById(chatId).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + chatId));
+        return UnitOfWork.find(Chat.class, chatId, chatRepository::findById).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat có ID " + chatId));
     }
 }
@@ -21,9 +21,17 @@ import vn.edu.iuh.models.enums.GroupMemberRole;
 import vn.edu.iuh.models.enums.GroupStatus;
 import vn.edu.iuh.models.enums.MessageType;
 import vn.edu.iuh.models.enums.NotificationType;
+import vn.edu.iuh.repositories.ChatAttachmentRepository;
+import vn.edu.iuh.repositories.MessageArchiveRepository;
 import vn.edu.iuh.repositories.ChatRepository;
 import vn.edu.iuh.repositories.GroupRepository;
+import vn.edu.iuh.repositories.ReferenceResolver;
+import vn.edu.iuh.repositories.SearchableMessageRepository;
+import vn.edu.iuh.repositories.SequenceRepository;
+import vn.edu.iuh.repositories.UnitOfWork;
+import vn.edu.iuh.repositories.UserChatRepository;
 import vn.edu.iuh.repositories.UserInfoRepository;
+import vn.edu.iuh.repositories.UserSummaryCache;
 import vn.edu.iuh.security.UserPrincipal;
 import vn.edu.iuh.services.GroupService;
 
@@ -38,17 +46,25 @@ import java.util.Optional;
 public class GroupServiceImpl implements GroupService {
     private final GroupRepository groupRepository;
     private final UserInfoRepository userInfoRepository;
+    private final UserChatRepository userChatRepository;
+    private final SearchableMessageRepository searchableMessageRepository;
+    private final ChatAttachmentRepository chatAttachmentRepository;
+    private final MessageArchiveRepository messageArchiveRepository;
+    private final UserSummaryCache userSummaryCache;
     private final ChatRepository chatRepository;
+    private final SequenceRepository sequenceRepository;
+    private final ReferenceResolver referenceResolver;
     private final ModelMapper modelMapper;
     private final SimpMessagingTemplate simpMessagingTemplate;
 
     @Override
     public List<GroupMember> getAllMembers(String groupId, UserPrincipal userPrincipal) {
         Group group = findById(groupId);
-        UserInfo userInfo = userInfoRepository.findByUser(new User(userPrincipal.getId())).orElseThrow(() -> new DataNotFoundException("Không tìm thấy thông tin người dùng"));
-        if (!group.getMembers().contains(GroupMember.builder().profile(userInfo).build())) {
+        String userInfoId = userInfoRepository.findIdByUser(new User(userPrincipal.getId())).orElseThrow(() -> new DataNotFoundException("Không tìm thấy thông tin người dùng")).getId();
+        if (group.getMembers().stream().noneMatch(groupMember -> userInfoId.equals(groupMember.getProfileId()))) {
             throw new AccessDeniedException("Bạn không phải là thành viên của nhóm này");
         }
+        referenceResolver.resolveProfiles(group.getMembers());
         return group.getMembers();
     }
 
@@ -86,21 +102,23 @@ public class GroupServiceImpl implements GroupService {
                 )
                 .build();
         chatRepository.save(chat);
+        long version = sequenceRepository.next(SequenceRepository.USER_CHAT_VERSION);
 
-        // add group leader
+        // add group leader, loaded whole because the group is returned with the leader's profile and the profile keeps
+        // the list of its groups
         UserInfo userInfo = userInfoRepository.findByUser(new User(userPrincipal.getId())).orElseThrow(() -> new DataNotFoundException("Không tìm thấy thông tin người dùng"));
         insertedGroup.getMembers().add(new GroupMember(userInfo, GroupMemberRole.GROUP_LEADER, GroupMemberRole.GROUP_LEADER.getDescription()));
         userInfo.getGroups().add(insertedGroup);
-        userInfo.getChats().add(UserChat.builder().chat(chat).joinTime(LocalDateTime.now()).build());
         userInfoRepository.save(userInfo);
+        userChatRepository.save(buildUserChat(userInfo, chat, insertedGroup, version));
 
         // add members
         groupRequestCreateDTO.getMembers().forEach((memberId) -> {
-            UserInfo userInfoMember = userInfoRepository.findById(memberId).orElseThrow(() -> new DataNotFoundException("Người dùng không tồn tại"));
+            UserInfo userInfoMember = UnitOfWork.find(UserInfo.class, memberId, userInfoRepository::findById).orElseThrow(() -> new DataNotFoundException("Người dùng không tồn tại"));
             insertedGroup.getMembers().add(new GroupMember(userInfoMember, GroupMemberRole.MEMBER, "Thêm bởi nhóm trưởng"));
             userInfoMember.getGroups().add(insertedGroup);
-            userInfoMember.getChats().add(UserChat.builder().chat(chat).joinTime(LocalDateTime.now()).build());
             userInfoRepository.save(userInfoMember);
+            userChatRepository.save(buildUserChat(userInfoMember, chat, insertedGroup, version));
             Notification notification = new Notification(userInfo.getLastName() + " đã tạo nhóm mới", NotificationType.CREATED_GROUP, userInfo.getId(), LocalDateTime.now());
             simpMessagingTemplate.convertAndSendToUser(memberId, "/private", notification);
         });
@@ -112,18 +130,17 @@ public class GroupServiceImpl implements GroupService {
     @Override
     public String leaveGroup(String groupId, UserPrincipal userPrincipal) {
         Group group = findById(groupId);
-        UserInfo senderInfo = userInfoRepository.findByUser(new User(userPrincipal.getId())).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng"));
-        if (group.getMembers().stream().anyMatch(groupMember -> groupMember.getProfile().equals(senderInfo) && groupMember.getRole().equals(GroupMemberRole.GROUP_LEADER))) {
+        String senderId = userInfoRepository.findIdByUser(new User(userPrincipal.getId())).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng")).getId();
+        if (group.getMembers().stream().anyMatch(groupMember -> senderId.equals(groupMember.getProfileId()) && groupMember.getRole().equals(GroupMemberRole.GROUP_LEADER))) {
             throw new AccessDeniedException("Bạn là nhóm trưởng không thể rời nhóm. Hãy chuyển giao vị trí trước khi rời đi");
         }
-        boolean isValid = group.getMembers().stream().anyMatch(groupMember -> groupMember.getProfile().equals(senderInfo));
+        boolean isValid = group.getMembers().stream().anyMatch(groupMember -> senderId.equals(groupMember.getProfileId()));
         if (isValid) {
-            group.getMembers().removeIf(groupMember -> groupMember.getProfile().equals(senderInfo));
+            group.getMembers().removeIf(groupMember -> senderId.equals(groupMember.getProfileId()));
             groupRepository.save(group);
 
-            senderInfo.getChats().removeIf(userChat -> userChat.getChat().equals(group.getChat()));
-            senderInfo.getGroups().remove(group);
-            userInfoRepository.save(senderInfo);
+            userInfoRepository.removeGroup(senderId, group.getId());
+            userChatRepository.deleteByUserAndChat(new UserInfo(senderId), group.getChat());
             return "Rời khỏi nhóm thành công";
         } else {
             throw new AccessDeniedException("Bạn không phải là thành viên của nhóm");
@@ -132,13 +149,13 @@ public class GroupServiceImpl implements GroupService {
 
     @Override
     public GroupMember changeRoleMember(String groupId, String memberId, GroupRoleUpdateRequestDTO groupRoleUpdateRequestDTO, UserPrincipal userPrincipal) {
-        UserInfo senderInfo = userInfoRepository.findByUser(new User(userPrincipal.getId())).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng"));
-        UserInfo memberInfo = userInfoRepository.findById(memberId).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng"));
+        String senderId = userInfoRepository.findIdByUser(new User(userPrincipal.getId())).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng")).getId();
+        UserInfo memberInfo = UnitOfWork.find(UserInfo.class, memberId, userInfoRepository::findById).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng"));
         Group group = findById(groupId);
-        boolean isValid = group.getMembers().stream().anyMatch(groupMember -> groupMember.getProfile().equals(senderInfo) && groupMember.getRole().equals(GroupMemberRole.GROUP_LEADER));
+        boolean isValid = group.getMembers().stream().anyMatch(groupMember -> senderId.equals(groupMember.getProfileId()) && groupMember.getRole().equals(GroupMemberRole.GROUP_LEADER));
         if (isValid) {
             Optional<GroupMember> updatedMember = group.getMembers().stream()
-                    .filter(groupMember -> groupMember.getProfile().equals(memberInfo))
+                    .filter(groupMember -> memberInfo.getId().equals(groupMember.getProfileId()))
                     .findFirst()
                     .map(groupMember -> {
                         groupMember.setRole(groupRoleUpdateRequestDTO.getRole());
@@ -166,18 +183,19 @@ public class GroupServiceImpl implements GroupService {
 
     @Override
     public Group findById(String id) {
-        return groupRepository.findById(id).orElseThrow(() -> new DataNotFoundException("Không tìm thấy nhóm có ID là " + id));
+        return UnitOfWork.find(Group.class, id, groupRepository::findById).orElseThrow(() -> new DataNotFoundException("Không tìm thấy nhóm có ID là " + id));
     }
 
     @Override
     public GroupDTO updateById(String id, GroupUpdateRequestDTO groupUpdateRequestDTO, UserPrincipal userPrincipal) {
-        UserInfo senderInfo = userInfoRepository.findByUser(new User(userPrincipal.getId())).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng"));
+        String senderId = userInfoRepository.findIdByUser(new User(userPrincipal.getId())).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng")).getId();
         Group group = findById(id);
-        boolean isValid = group.getMembers().stream().anyMatch(groupMember -> groupMember.getProfile().equals(senderInfo));
+        boolean isValid = group.getMembers().stream().anyMatch(groupMember -> senderId.equals(groupMember.getProfileId()));
         if (isValid) {
             modelMapper.map(groupUpdateRequestDTO, group);
             groupRepository.save(group);
-            return modelMapper.map(group, GroupDTO.class);
+            userChatRepository.updateGroupChatSummary(group.getChat().getId(), group.getName(), group.getThumbnailAvatar(), sequenceRepository.next(SequenceRepository.USER_CHAT_VERSION));
+            return GroupDTO.from(group);
         } else {
             throw new AccessDeniedException("Bạn không phải là thành viên nhóm");
         }
@@ -190,18 +208,21 @@ public class GroupServiceImpl implements GroupService {
 
     @Override
     public void deleteById(String id, UserPrincipal userPrincipal) {
-        UserInfo sender = userInfoRepository.findByUser(new User(userPrincipal.getId())).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng"));
+        UserSummary sender = userSummaryCache.getById(userInfoRepository.findIdByUser(new User(userPrincipal.getId())).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng")).getId());
         Group group = findById(id);
-        boolean isValid = group.getMembers().stream().anyMatch(groupMember -> groupMember.getProfile().equals(sender) && groupMember.getRole().equals(GroupMemberRole.GROUP_LEADER));
+        boolean isValid = group.getMembers().stream().anyMatch(groupMember -> sender.getId().equals(groupMember.getProfileId()) && groupMember.getRole().equals(GroupMemberRole.GROUP_LEADER));
         if (isValid) {
             group.getMembers().forEach(groupMember -> {
-                UserInfo member = userInfoRepository.findById(groupMember.getProfile().getId()).orElseThrow(() -> new DataNotFoundException("Không tìm thấy thành viên"));
+                UserInfo member = UnitOfWork.find(UserInfo.class, groupMember.getProfileId(), userInfoRepository::findById).orElseThrow(() -> new DataNotFoundException("Không tìm thấy thành viên"));
                 member.getGroups().remove(group);
-                member.getChats().removeIf(userChat -> group.getChat().equals(userChat.getChat()));
                 userInfoRepository.save(member);
                 Notification notification = new Notification(sender.getLastName() + " đã giải tán nhóm", NotificationType.DELETED_GROUP, sender.getId(), LocalDateTime.now());
                 simpMessagingTemplate.convertAndSendToUser(member.getId(), "/private", notification);
             });
+            userChatRepository.deleteAllByChat(group.getChat());
+            searchableMessageRepository.deleteAllByChatId(group.getChatId());
+            chatAttachmentRepository.deleteAllByChatId(group.getChatId());
+            messageArchiveRepository.deleteAllByChatId(group.getChatId());
             group.setStatus(GroupStatus.DELETED);
             groupRepository.save(group);
         } else {
@@ -212,17 +233,17 @@ public class GroupServiceImpl implements GroupService {
     @Override
     public List<GroupMember> addMembersToGroup(String groupId, List<String> users, UserDetails userDetails) {
         // validate whether the user is in the group
-        UserInfo senderInfo = userInfoRepository.findByUser(new User(((UserPrincipal) userDetails).getId())).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng"));
+        UserSummary senderInfo = userSummaryCache.getById(userInfoRepository.findIdByUser(new User(((UserPrincipal) userDetails).getId())).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng")).getId());
         Group group = findById(groupId);
 
-        boolean isValid = group.getMembers().stream().anyMatch(groupMember -> groupMember.getProfile().equals(senderInfo));
+        boolean isValid = group.getMembers().stream().anyMatch(groupMember -> senderInfo.getId().equals(groupMember.getProfileId()));
         List<GroupMember> addedMembers = new ArrayList<>();
         if (isValid) {
             List<UserInfo> memberInfos = userInfoRepository.findAllById(users);
             memberInfos.forEach(memberInfo -> {
-                if (group.getMembers().stream().noneMatch(groupMember -> groupMember.getProfile().equals(memberInfo))) {
+                if (group.getMembers().stream().noneMatch(groupMember -> memberInfo.getId().equals(groupMember.getProfileId()))) {
                     GroupMember newGroupMember;
-                    boolean isLeader = group.getMembers().stream().anyMatch(groupMember1 -> groupMember1.getProfile().equals(senderInfo) && groupMember1.getRole().equals(GroupMemberRole.GROUP_LEADER));
+                    boolean isLeader = group.getMembers().stream().anyMatch(groupMember1 -> senderInfo.getId().equals(groupMember1.getProfileId()) && groupMember1.getRole().equals(GroupMemberRole.GROUP_LEADER));
                     if (isLeader) {
                         newGroupMember = new GroupMember(memberInfo, GroupMemberRole.MEMBER, "Thêm bởi nhóm trưởng");
                     } else {
@@ -231,8 +252,8 @@ public class GroupServiceImpl implements GroupService {
                     addedMembers.add(newGroupMember);
                     group.getMembers().add(newGroupMember);
                     memberInfo.getGroups().add(group);
-                    memberInfo.getChats().add(UserChat.builder().chat(group.getChat()).build());
                     userInfoRepository.save(memberInfo);
+                    userChatRepository.save(buildUserChat(memberInfo, group.getChat(), group, sequenceRepository.next(SequenceRepository.USER_CHAT_VERSION)));
                     Notification notification = new Notification(senderInfo.getLastName() + " vừa thêm bạn vào nhóm", NotificationType.ADD_TO_GROUP, senderInfo.getId(), LocalDateTime.now());
                     simpMessagingTemplate.convertAndSendToUser(memberInfo.getId(), "/private", notification);
                 }
@@ -246,17 +267,17 @@ public class GroupServiceImpl implements GroupService {
 
     @Override
     public void deleteMemberById(String groupId, String memberId, UserPrincipal userPrincipal) {
-        UserInfo senderInfo = userInfoRepository.findByUser(new User(userPrincipal.getId())).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng"));
+        UserSummary senderInfo = userSummaryCache.getById(userInfoRepository.findIdByUser(new User(userPrincipal.getId())).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng")).getId());
         Group group = findById(groupId);
-        boolean isValid = group.getMembers().stream().anyMatch(groupMember -> groupMember.getProfile().equals(senderInfo) && (groupMember.getRole().equals(GroupMemberRole.GROUP_LEADER) || groupMember.getRole().equals(GroupMemberRole.DEPUTY_GROUP_LEADER)));
+        boolean isValid = group.getMembers().stream().anyMatch(groupMember -> senderInfo.getId().equals(groupMember.getProfileId()) && (groupMember.getRole().equals(GroupMemberRole.GROUP_LEADER) || groupMember.getRole().equals(GroupMemberRole.DEPUTY_GROUP_LEADER)));
         if (isValid) {
-            if (!group.getMembers().removeIf(member -> member.getProfile().getId().equals(memberId))) {
+            if (!group.getMembers().removeIf(member -> memberId.equals(member.getProfileId()))) {
                 throw new DataNotFoundException("Thành viên này không thuộc nhóm hoặc không tồn tại");
             }
-            UserInfo memberInfo = userInfoRepository.findById(memberId).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng"));
+            UserInfo memberInfo = UnitOfWork.find(UserInfo.class, memberId, userInfoRepository::findById).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng"));
             memberInfo.getGroups().remove(group);
-            memberInfo.getChats().remove(UserChat.builder().chat(group.getChat()).build());
             userInfoRepository.save(memberInfo);
+            userChatRepository.deleteByUserAndChat(memberInfo, group.getChat());
             groupRepository.save(group);
             Notification notification = new Notification(senderInfo.getLastName() + " vừa xóa bạn khỏi nhóm", NotificationType.REMOVED_FROM_GROUP, senderInfo.getId(), LocalDateTime.now());
             simpMessagingTemplate.convertAndSendToUser(memberInfo.getId(), "/private", notification);
@@ -264,4 +285,18 @@ public class GroupServiceImpl implements GroupService {
             throw new AccessDeniedException("Bạn phải là thành viên và có vai trò nhóm trưởng hoặc nhóm phó");
         }
     }
+
+    private UserChat buildUserChat(UserInfo userInfo, Chat chat, Group group, long version) {
+        return UserChat.builder()
+                .user(userInfo)
+                .chat(chat)
+                .joinTime(LocalDateTime.now())
+                .version(version)
+                .groupId(group.getId())
+                .name(group.getName())
+                .avatar(group.getThumbnailAvatar())
+                .lastMessage(userSummaryCache.summarize(chat.getLastMessage()))
+                .lastMessageAt(chat.getLastMessage().getCreatedAt())
+                .build();
+    }
 }
@@ -0,0 +1,142 @@
+package vn.edu.iuh.services.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import vn.edu.iuh.models.Message;
+import vn.edu.iuh.models.MessageArchive;
+import vn.edu.iuh.repositories.ChatRepository;
+import vn.edu.iuh.repositories.MessageArchiveRepository;
+import vn.edu.iuh.repositories.MessageTailCache;
+import vn.edu.iuh.services.MessageArchiveService;
+import vn.edu.iuh.utils.ReferenceUtil;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Archives old messages a few chats at a time so a run never holds many chat documents. Every segment is written
+ * before its messages are taken out of the chat, so a failed run leaves at worst copies that the next run skips
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MessageArchiveServiceImpl implements MessageArchiveService {
+    private final ChatRepository chatRepository;
+    private final MessageArchiveRepository messageArchiveRepository;
+    private final MessageTailCache messageTailCache;
+    @Value("${app.message-archive.age-days:180}")
+    private int ageDays;
+    @Value("${app.message-archive.segment-size:500}")
+    private int segmentSize;
+    @Value("${app.message-archive.chats-per-run:20}")
+    private int chatsPerRun;
+    @Value("${app.message-archive.segments-per-chat:10}")
+    private int segmentsPerChat;
+
+    @Override
+    @Scheduled(initialDelayString = "${app.message-archive.interval-milliseconds:3600000}", fixedDelayString = "${app.message-archive.interval-milliseconds:3600000}")
+    public int archiveOldMessages() {
+        LocalDateTime before = LocalDateTime.now().minusDays(ageDays);
+        int segments = 0;
+        for (String chatId : chatRepository.findChatIdsWithMessagesBefore(before, chatsPerRun)) {
+            try {
+                segments += archiveChat(chatId, before);
+            } catch (Exception e) {
+                log.warn("Archive messages of chat {} failed, retry on next run: {}", chatId, e.getMessage());
+            }
+        }
+        if (segments > 0) {
+            log.info("Archived {} message segments", segments);
+        }
+        return segments;
+    }
+
+    @Override
+    public Page<Message> appendArchivedMessages(String chatId, String userInfoId, LocalDateTime after, Page<Message> page) {
+        List<MessageArchive> archives = messageArchiveRepository.findHeadersByChatId(chatId).stream()
+                .filter(archive -> after == null || archive.getLastCreatedAt().isAfter(after))
+                .toList();
+        if (archives.isEmpty() || page.getPageable().isUnpaged()) {
+            return page;
+        }
+        // a segment cut by the cleared history time has to be read to be counted
+        Map<String, List<Message>> loaded = new HashMap<>();
+        long[] counts = new long[archives.size()];
+        for (int i = 0; i < archives.size(); i++) {
+            MessageArchive archive = archives.get(i);
+            if (after != null && !archive.getFirstCreatedAt().isAfter(after)) {
+                List<Message> messages = visibleMessages(archive, userInfoId, after);
+                loaded.put(archive.getId(), messages);
+                counts[i] = messages.size();
+            } else {
+                counts[i] = archive.getCount() - archive.getDeleteCounts().getOrDefault(userInfoId, 0);
+            }
+        }
+        long live = page.getTotalElements();
+        Pageable pageable = page.getPageable();
+        long end = pageable.getOffset() + pageable.getPageSize();
+        List<Message> content = page.getContent();
+        if (end > live) {
+            long skip = Math.max(0, pageable.getOffset() - live);
+            long limit = end - Math.max(pageable.getOffset(), live);
+            LinkedList<Message> archived = new LinkedList<>();
+            for (int i = 0; i < archives.size() && limit > 0; i++) {
+                if (skip >= counts[i]) {
+                    skip -= counts[i];
+                    continue;
+                }
+                MessageArchive archive = archives.get(i);
+                List<Message> messages = loaded.containsKey(archive.getId()) ? loaded.get(archive.getId()) : visibleMessages(archive, userInfoId, after);
+                int to = (int) Math.max(0, messages.size() - skip);
+                int from = (int) Math.max(0, to - limit);
+                archived.addAll(0, messages.subList(from, to));
+                limit -= to - from;
+                skip = 0;
+            }
+            archived.addAll(content);
+            content = archived;
+        }
+        return new PageImpl<>(content, pageable, live + Arrays.stream(counts).sum());
+    }
+
+    private int archiveChat(String chatId, LocalDateTime before) {
+        List<MessageArchive> archives = messageArchiveRepository.findHeadersByChatId(chatId);
+        ObjectId archivedUntil = archives.isEmpty() ? null : archives.get(0).getLastMessageId();
+        int segments = 0;
+        for (int i = 0; i < segmentsPerChat; i++) {
+            List<Message> messages = chatRepository.findArchivableMessages(chatId, before, segmentSize);
+            if (messages.isEmpty()) {
+                break;
+            }
+            ObjectId last = archivedUntil;
+            // copies put back by a save of a chat loaded before the previous run are only removed again
+            List<Message> unarchived = messages.stream()
+                    .filter(message -> last == null || new ObjectId(message.getMessageId()).compareTo(last) > 0)
+                    .toList();
+            if (!unarchived.isEmpty()) {
+                archivedUntil = messageArchiveRepository.archive(chatId, unarchived).getLastMessageId();
+                segments++;
+            }
+            chatRepository.removeMessages(chatId, messages.stream().map(Message::getMessageId).toList());
+            if (messages.size() < segmentSize) {
+                break;
+            }
+        }
+        messageTailCache.evict(chatId);
+        return segments;
+    }
+
+    private List<Message> visibleMessages(MessageArchive archive, String userInfoId, LocalDateTime after) {
+        return messageArchiveRepository.read(archive).stream()
+                .filter(message -> after == null || message.getCreatedAt().isAfter(after))
+                .filter(message -> !ReferenceUtil.idsOf(message.getDeleteBy()).contains(userInfoId))
+                .toList();
+    }
+}
@@ -0,0 +1,84 @@
+package vn.edu.iuh.services.impl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import vn.edu.iuh.models.Chat;
+import vn.edu.iuh.models.GroupMember;
+import vn.edu.iuh.repositories.ChatAttachmentRepository;
+import vn.edu.iuh.repositories.ChatRepository;
+import vn.edu.iuh.repositories.MessageTailCache;
+import vn.edu.iuh.repositories.SearchableMessageRepository;
+import vn.edu.iuh.services.MessageCompactionService;
+import vn.edu.iuh.utils.ReferenceUtil;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Compacts a few chats per run, continuing after the last chat of the previous run so chats that keep matching without
+ * anything to drop do not hold back the others. Recalled messages keep their payload for the recall window, then
+ * only the message itself is kept so replies still point to it
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MessageCompactionServiceImpl implements MessageCompactionService {
+    private static final long RECALL_WINDOW_HOURS = 24;
+    private final ChatRepository chatRepository;
+    private final SearchableMessageRepository searchableMessageRepository;
+    private final ChatAttachmentRepository chatAttachmentRepository;
+    private final MessageTailCache messageTailCache;
+    private final MeterRegistry meterRegistry;
+    @Value("${app.message-compaction.chats-per-run:50}")
+    private int chatsPerRun;
+    private String lastChatId;
+
+    @Override
+    @Scheduled(initialDelayString = "${app.message-compaction.interval-milliseconds:600000}", fixedDelayString = "${app.message-compaction.interval-milliseconds:600000}")
+    public synchronized long compact() {
+        LocalDateTime recalledBefore = LocalDateTime.now().minusHours(RECALL_WINDOW_HOURS);
+        List<String> chatIds = chatRepository.findChatIdsToCompact(lastChatId, recalledBefore, chatsPerRun);
+        lastChatId = chatIds.size() < chatsPerRun ? null : chatIds.get(chatIds.size() - 1);
+        long reclaimed = 0;
+        for (String chatId : chatIds) {
+            try {
+                reclaimed += compactChat(chatId, recalledBefore);
+            } catch (Exception e) {
+                log.warn("Compact chat {} failed, retry on a later run: {}", chatId, e.getMessage());
+            }
+        }
+        meterRegistry.counter("chat.compaction.reclaimed.bytes").increment(reclaimed);
+        if (reclaimed > 0) {
+            log.info("Compacted {} chats, reclaimed {} bytes", chatIds.size(), reclaimed);
+        }
+        return reclaimed;
+    }
+
+    private long compactChat(String chatId, LocalDateTime recalledBefore) {
+        long size = chatRepository.findDocumentSize(chatId);
+        long stripped = chatRepository.stripRecalledMessages(chatId, recalledBefore);
+        Chat chat = chatRepository.findHeader(chatId).orElse(null);
+        List<String> deleted = chat == null ? List.of() : chatRepository.findMessageIdsDeletedByAll(chatId, memberIds(chat));
+        if (!deleted.isEmpty()) {
+            chatRepository.removeMessages(chatId, deleted);
+            searchableMessageRepository.deleteAllById(deleted);
+            chatAttachmentRepository.deleteAllByMessageIdIn(deleted);
+        }
+        if (stripped == 0 && deleted.isEmpty()) {
+            return 0;
+        }
+        messageTailCache.evict(chatId);
+        return Math.max(0, size - chatRepository.findDocumentSize(chatId));
+    }
+
+    private List<String> memberIds(Chat chat) {
+        if (chat.getGroup() != null) {
+            return chat.getGroup().getMembers().stream().map(GroupMember::getProfileId).toList();
+        }
+        return ReferenceUtil.idsOf(chat.getMembers());
+    }
+}
@@ -4,6 +4,10 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.types.ObjectId;
 import org.modelmapper.ModelMapper;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -14,44 +18,51 @@ import vn.edu.iuh.exceptions.InvalidFriendshipRequestException;
 import vn.edu.iuh.exceptions.InvalidRequestException;
 import vn.edu.iuh.models.*;
 import vn.edu.iuh.models.enums.*;
+import vn.edu.iuh.projections.ProfileCard;
 import vn.edu.iuh.repositories.ChatRepository;
+import vn.edu.iuh.repositories.FriendRepository;
+import vn.edu.iuh.repositories.SequenceRepository;
+import vn.edu.iuh.repositories.UnitOfWork;
+import vn.edu.iuh.repositories.UserChatRepository;
 import vn.edu.iuh.repositories.UserInfoRepository;
 import vn.edu.iuh.repositories.UserRepository;
+import vn.edu.iuh.repositories.UserSummaryCache;
 import vn.edu.iuh.security.UserPrincipal;
 import vn.edu.iuh.services.UserInfoService;
+import vn.edu.iuh.utils.ReferenceUtil;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class UserInfoServiceImpl implements UserInfoService {
     private final UserInfoRepository userInfoRepository;
+    private final UserChatRepository userChatRepository;
+    private final UserSummaryCache userSummaryCache;
+    private final FriendRepository friendRepository;
     private final UserRepository userRepository;
     private final ChatRepository chatRepository;
+    private final SequenceRepository sequenceRepository;
     private final ModelMapper modelMapper;
     private final SimpMessagingTemplate simpMessagingTemplate;
 
 
     @Override
     public OtherUserInfoDTO findUserInfoByPhone(String phone, String senderId) {
-        UserInfo sender = userInfoRepository.findByUser(new User(senderId)).orElseThrow(() -> new DataNotFoundException("Thông tin người dùng không tồn tại"));
+        String senderInfoId = findUserInfoIdByUserId(senderId);
 
         User user = userRepository.findByPhone(phone).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng nào có số điện thoại là " + phone));
-        UserInfo userInfo = userInfoRepository.findByUser(user).orElseThrow(() -> new DataNotFoundException("Thông tin người dùng không tồn tại"));
+        ProfileCard userInfo = userInfoRepository.findProfileCardByUser(user).orElseThrow(() -> new DataNotFoundException("Thông tin người dùng không tồn tại"));
 
-        if (sender.equals(userInfo)) {
+        if (senderInfoId.equals(userInfo.getId())) {
             throw new InvalidRequestException("Bạn đang tự tìm kiếm chính mình");
         }
 
-        sender.getRecentSearches().remove(userInfo);
-        sender.getRecentSearches().add(userInfo);
-        userInfoRepository.save(sender);
-        OtherUserInfoDTO otherUserInfoDTO = modelMapper.map(userInfo, OtherUserInfoDTO.class);
+        userInfoRepository.addRecentSearch(senderInfoId, userInfo.getId());
+        OtherUserInfoDTO otherUserInfoDTO = OtherUserInfoDTO.from(userInfo, user.getPhone());
         log.info(otherUserInfoDTO.toString());
-        otherUserInfoDTO.setPhone(userInfo.getUser().getPhone());
         return otherUserInfoDTO;
     }
 
@@ -63,37 +74,47 @@ public class UserInfoServiceImpl implements UserInfoService {
 
     @Override
     public UserInfo findById(String id) {
-        return userInfoRepository.findById(id).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng có ID là " + id));
+        return UnitOfWork.find(UserInfo.class, id, userInfoRepository::findById).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng có ID là " + id));
     }
 
     @Override
     public UserInfo findUserInfoByUserId(String userId) {
         log.info("Get profile by user ID");
-        return userInfoRepository.findByUser(new User(userId)).orElseThrow(() -> new DataNotFoundException("Thông tin người dùng không tồn tại"));
+        return userInfoRepository.findByUser(new User(userId))
+                .map(userInfo -> UnitOfWork.register(UserInfo.class, userInfo.getId(), userInfo))
+                .orElseThrow(() -> new DataNotFoundException("Thông tin người dùng không tồn tại"));
+    }
+
+    @Override
+    public String findUserInfoIdByUserId(String userId) {
+        return userInfoRepository.findIdByUser(new User(userId)).orElseThrow(() -> new DataNotFoundException("Thông tin người dùng không tồn tại")).getId();
+    }
+
+    @Override
+    public Page<FriendDTO> findFriendsByUserId(String userId, FriendStatus status, Pageable pageable) {
+        String userInfoId = findUserInfoIdByUserId(userId);
+        List<FriendDTO> friends = friendRepository.findAllWithProfileByOwnerAndStatus(userInfoId, status, pageable).stream()
+                .map(FriendDTO::from)
+                .toList();
+        return PageableExecutionUtils.getPage(friends, pageable, () -> friendRepository.countByOwnerAndStatus(new UserInfo(userInfoId), status));
+    }
+
+    @Override
+    public List<UserInfo> findRecentSearchesByUserId(String userId) {
+        return userInfoRepository.findRecentSearchesById(findUserInfoIdByUserId(userId)).orElseThrow(() -> new DataNotFoundException("Thông tin người dùng không tồn tại")).getRecentSearches();
     }
 
     @Override
     public List<GroupDTO> findAllGroupToUserInfoByUserId(String userId) {
-        UserInfo userInfo = findUserInfoByUserId(userId);
-        List<Group> groups = userInfo.getGroups();
-        List<GroupDTO> groupDTOList = new ArrayList<>();
-        groups.forEach(group -> {
-            GroupDTO groupDTO = modelMapper.map(group, GroupDTO.class);
-            groupDTOList.add(groupDTO);
-        });
-        return groupDTOList;
+        return findAllGroupToUserInfoByUserInfoId(findUserInfoIdByUserId(userId));
     }
 
     @Override
     public List<GroupDTO> findAllGroupToUserInfoByUserInfoId(String userInfoId) {
-        UserInfo userInfo = findById(userInfoId);
-        List<Group> groups = userInfo.getGroups();
-        List<GroupDTO> groupDTOList = new ArrayList<>();
-        groups.forEach(group -> {
-            GroupDTO groupDTO = modelMapper.map(group, GroupDTO.class);
-            groupDTOList.add(groupDTO);
-        });
-        return groupDTOList;
+        List<Group> groups = userInfoRepository.findGroupsById(userInfoId).orElseThrow(() -> new DataNotFoundException("Không tìm thấy người dùng có ID là " + userInfoId)).getGroups();
+        return groups.stream()
+                .map(GroupDTO::from)
+                .toList();
     }
 
     @Override
@@ -101,7 +122,13 @@ public class UserInfoServiceImpl implements UserInfoService {
         User user = userRepository.findByPhone(phone).orElseThrow(() -> new UsernameNotFoundException("Không tìm thấy người dùng nào có số điện thoại là " + phone));
         UserInfo existingUserInfo = userInfoRepository.findByUser(user).orElseThrow(() -> new DataNotFoundException("Thông tin người dùng không tồn tại"));
         modelMapper.map(userInfoDTO, existingUserInfo);
-        return userInfoRepository.save(existingUserInfo);
+        UserInfo updatedUserInfo = userInfoRepository.save(existingUserInfo);
+        if (userInfoDTO.getFirstName() != null || userInfoDTO.getLastName() != null || userInfoDTO.getThumbnailAvatar() != null || userInfoDTO.getGender() != null) {
+            UserSummary summary = UserSummary.from(updatedUserInfo);
+            userSummaryCache.put(summary);
+            userChatRepository.updatePeerSummary(summary, sequenceRepository.next(SequenceRepository.USER_CHAT_VERSION));
+        }
+        return updatedUserInfo;
     }
 
 
@@ -129,45 +156,37 @@ public class UserInfoServiceImpl implements UserInfoService {
     }
 
     private String addFriend(UserInfo senderUserInfo, UserInfo receiverUserInfo) {
-        return senderUserInfo.getFriends().stream()
-                .filter(friend -> friend.getProfile().getId().equals(receiverUserInfo.getId()))
-                .findFirst()
-                .map(friend -> {
-                    if (friend.getStatus().equals(FriendStatus.STRANGER)) {
-                        friend.setStatus(FriendStatus.FRIEND_REQUEST);
-
-                        receiverUserInfo.getFriends().stream()
-                                .filter(f -> f.getProfile().getId().equals(senderUserInfo.getId()))
-                                .findFirst()
-                                .ifPresent(f -> f.setStatus(FriendStatus.PENDING));
-                        userInfoRepository.save(senderUserInfo);
-                        userInfoRepository.save(receiverUserInfo);
-                        Notification notification = new Notification(senderUserInfo.getLastName() + " vừa gửi lời mời kết bạn", NotificationType.FRIEND_REQUEST, senderUserInfo.getId(), LocalDateTime.now());
-                        simpMessagingTemplate.convertAndSendToUser(receiverUserInfo.getId(), "/private", notification);
-                        return "Gửi lời mời kết bạn đến " + receiverUserInfo.getUser().getPhone() + " thành công.";
-                    } else if (friend.getStatus().equals(FriendStatus.BLOCK)) {
-                        throw new FriendshipRelationshipException("Bạn đã chặn người này. Hãy bỏ chặn trước khi kết bạn");
-                    } else if (friend.getStatus().equals(FriendStatus.BLOCKED)) {
-                        throw new FriendshipRelationshipException("Bạn đã bị chặn đối phương");
-                    } else if (friend.getStatus().equals(FriendStatus.FRIEND)) {
-                        throw new FriendshipRelationshipException("Hai người đã là bạn bè");
-                    } else if (friend.getStatus().equals(FriendStatus.FRIEND_REQUEST)) {
-                        throw new FriendshipRelationshipException("Bạn đã gửi lời mời kết bạn cho đối phương trước đó");
-                    } else {
-                        throw new FriendshipRelationshipException("Bạn có lời mời kết bạn từ đối phương");
-                    }
-                })
-                .orElseGet(() -> {
-                    Friend senderFriend = new Friend(receiverUserInfo, receiverUserInfo.getFirstName() + " " + receiverUserInfo.getLastName(), FriendStatus.FRIEND_REQUEST);
-                    Friend receiverFriend = new Friend(senderUserInfo, senderUserInfo.getFirstName() + " " + senderUserInfo.getLastName(), FriendStatus.PENDING);
-                    senderUserInfo.getFriends().add(senderFriend);
-                    receiverUserInfo.getFriends().add(receiverFriend);
-                    userInfoRepository.save(senderUserInfo);
-                    userInfoRepository.save(receiverUserInfo);
-                    Notification notification = new Notification(senderUserInfo.getLastName() + " vừa gửi lời mời kết bạn", NotificationType.FRIEND_REQUEST, senderUserInfo.getId(), LocalDateTime.now());
-                    simpMessagingTemplate.convertAndSendToUser(receiverUserInfo.getId(), "/private", notification);
-                    return "Gửi lời mời kết bạn đến " + receiverUserInfo.getUser().getPhone() + " thành công.";
-                });
+        FriendStatus status = findFriendStatus(senderUserInfo, receiverUserInfo);
+        if (status.equals(FriendStatus.STRANGER)) {
+            updateBothStatuses(senderUserInfo, receiverUserInfo, FriendStatus.FRIEND_REQUEST, FriendStatus.PENDING);
+            Notification notification = new Notification(senderUserInfo.getLastName() + " vừa gửi lời mời kết bạn", NotificationType.FRIEND_REQUEST, senderUserInfo.getId(), LocalDateTime.now());
+            simpMessagingTemplate.convertAndSendToUser(receiverUserInfo.getId(), "/private", notification);
+            return "Gửi lời mời kết bạn đến " + receiverUserInfo.getUser().getPhone() + " thành công.";
+        } else if (status.equals(FriendStatus.BLOCK)) {
+            throw new FriendshipRelationshipException("Bạn đã chặn người này. Hãy bỏ chặn trước khi kết bạn");
+        } else if (status.equals(FriendStatus.BLOCKED)) {
+            throw new FriendshipRelationshipException("Bạn đã bị chặn đối phương");
+        } else if (status.equals(FriendStatus.FRIEND)) {
+            throw new FriendshipRelationshipException("Hai người đã là bạn bè");
+        } else if (status.equals(FriendStatus.FRIEND_REQUEST)) {
+            throw new FriendshipRelationshipException("Bạn đã gửi lời mời kết bạn cho đối phương trước đó");
+        } else {
+            throw new FriendshipRelationshipException("Bạn có lời mời kết bạn từ đối phương");
+        }
+    }
+
+    /**
+     * @return status of the edge from one profile to another, {@link FriendStatus#STRANGER} when there is none
+     */
+    private FriendStatus findFriendStatus(UserInfo owner, UserInfo profile) {
+        return friendRepository.findByOwnerAndProfile(owner, profile)
+                .map(Friend::getStatus)
+                .orElse(FriendStatus.STRANGER);
+    }
+
+    private void updateBothStatuses(UserInfo currentUserInfo, UserInfo friendUserInfo, FriendStatus currentStatus, FriendStatus friendStatus) {
+        friendRepository.upsertStatus(currentUserInfo.getId(), friendUserInfo.getId(), currentStatus, friendUserInfo.getFirstName() + " " + friendUserInfo.getLastName(), null);
+        friendRepository.upsertStatus(friendUserInfo.getId(), currentUserInfo.getId(), friendStatus, currentUserInfo.getFirstName() + " " + currentUserInfo.getLastName(), null);
     }
 
     @Override
@@ -180,39 +199,16 @@ public class UserInfoServiceImpl implements UserInfoService {
 
         UserInfo friendUserInfo = findById(friendId);
 
-        return currentUserInfo.getFriends().stream()
-                .filter(friend -> friend.getProfile().getId().equals(friendUserInfo.getId()))
-                .findFirst()
-                .map(friend -> {
-                    if (friend.getStatus().equals(FriendStatus.BLOCK)) {
-                        throw new FriendshipRelationshipException("Bạn đã chặn người này.");
-                    } else if (friend.getStatus().equals(FriendStatus.BLOCKED)) {
-                        throw new FriendshipRelationshipException("Bạn đã bị chặn đối phương");
-                    } else {
-                        friend.setStatus(FriendStatus.BLOCK);
-
-                        friendUserInfo.getFriends().stream()
-                                .filter(f -> f.getProfile().getId().equals(currentUserInfo.getId()))
-                                .findFirst()
-                                .ifPresent(f -> f.setStatus(FriendStatus.BLOCKED));
-                        userInfoRepository.save(currentUserInfo);
-                        userInfoRepository.save(friendUserInfo);
-                        Notification notification = new Notification(currentUserInfo.getLastName() + " đã chặn bạn", NotificationType.BLOCKED_FRIEND, currentUserInfo.getId(), LocalDateTime.now());
-                        simpMessagingTemplate.convertAndSendToUser(friendUserInfo.getId(), "/private", notification);
-                        return "Bạn đã chặn người dùng " + friendUserInfo.getUser().getPhone();
-                    }
-                })
-                .orElseGet(() -> {
-                    Friend senderFriend = new Friend(friendUserInfo, friendUserInfo.getFirstName() + " " + friendUserInfo.getLastName(), FriendStatus.BLOCK);
-                    Friend receiverFriend = new Friend(currentUserInfo, currentUserInfo.getFirstName() + " " + currentUserInfo.getLastName(), FriendStatus.BLOCKED);
-                    currentUserInfo.getFriends().add(senderFriend);
-                    friendUserInfo.getFriends().add(receiverFriend);
-                    userInfoRepository.save(currentUserInfo);
-                    userInfoRepository.save(friendUserInfo);
-                    Notification notification = new Notification(currentUserInfo.getLastName() + " đã chặn bạn", NotificationType.BLOCKED_FRIEND, currentUserInfo.getId(), LocalDateTime.now());
-                    simpMessagingTemplate.convertAndSendToUser(friendUserInfo.getId(), "/private", notification);
-                    return "Bạn đã chặn người dùng " + friendUserInfo.getUser().getPhone() + " thành công";
-                });
+        FriendStatus status = findFriendStatus(currentUserInfo, friendUserInfo);
+        if (status.equals(FriendStatus.BLOCK)) {
+            throw new FriendshipRelationshipException("Bạn đã chặn người này.");
+        } else if (status.equals(FriendStatus.BLOCKED)) {
+            throw new FriendshipRelationshipException("Bạn đã bị chặn đối phương");
+        }
+        updateBothStatuses(currentUserInfo, friendUserInfo, FriendStatus.BLOCK, FriendStatus.BLOCKED);
+        Notification notification = new Notification(currentUserInfo.getLastName() + " đã chặn bạn", NotificationType.BLOCKED_FRIEND, currentUserInfo.getId(), LocalDateTime.now());
+        simpMessagingTemplate.convertAndSendToUser(friendUserInfo.getId(), "/private", notification);
+        return "Bạn đã chặn người dùng " + friendUserInfo.getUser().getPhone() + " thành công";
     }
 
     @Override
@@ -220,22 +216,13 @@ public class UserInfoServiceImpl implements UserInfoService {
         UserInfo currentUserInfo = findUserInfoByUserId(userPrincipal.getId());
         UserInfo friendUserInfo = findById(friendId);
 
-        return currentUserInfo.getFriends().stream()
-                .filter(friend -> friend.getProfile().getId().equals(friendUserInfo.getId()) && friend.getStatus().equals(FriendStatus.BLOCK))
-                .findFirst()
-                .map(friend -> {
-                    friend.setStatus(FriendStatus.STRANGER);
-                    friendUserInfo.getFriends().stream()
-                            .filter(f -> f.getProfile().getId().equals(currentUserInfo.getId()))
-                            .findFirst()
-                            .ifPresent(f -> f.setStatus(FriendStatus.STRANGER));
-                    userInfoRepository.save(currentUserInfo);
-                    userInfoRepository.save(friendUserInfo);
-                    Notification notification = new Notification(currentUserInfo.getLastName() + " đã bỏ chặn bạn", NotificationType.UNBLOCKED_FRIEND, currentUserInfo.getId(), LocalDateTime.now());
-                    simpMessagingTemplate.convertAndSendToUser(friendUserInfo.getId(), "/private", notification);
-                    return "Bạn đã bỏ chặn người dùng " + friendUserInfo.getUser().getPhone() + " thành công";
-                })
-                .orElseThrow(() -> new DataNotFoundException("Bạn không chặn đối phương nên không thể bỏ chặn"));
+        if (!findFriendStatus(currentUserInfo, friendUserInfo).equals(FriendStatus.BLOCK)) {
+            throw new DataNotFoundException("Bạn không chặn đối phương nên không thể bỏ chặn");
+        }
+        updateBothStatuses(currentUserInfo, friendUserInfo, FriendStatus.STRANGER, FriendStatus.STRANGER);
+        Notification notification = new Notification(currentUserInfo.getLastName() + " đã bỏ chặn bạn", NotificationType.UNBLOCKED_FRIEND, currentUserInfo.getId(), LocalDateTime.now());
+        simpMessagingTemplate.convertAndSendToUser(friendUserInfo.getId(), "/private", notification);
+        return "Bạn đã bỏ chặn người dùng " + friendUserInfo.getUser().getPhone() + " thành công";
     }
 
     @Override
@@ -243,33 +230,19 @@ public class UserInfoServiceImpl implements UserInfoService {
         UserInfo currentUserInfo = findUserInfoByUserId(userPrincipal.getId());
         UserInfo friendUserInfo = findById(friendId);
 
-        return currentUserInfo.getFriends().stream()
-                .filter(friend -> friend.getProfile().getId().equals(friendUserInfo.getId()))
-                .findFirst()
-                .map(friend -> {
-                    if (friend.getStatus().equals(FriendStatus.FRIEND)) {
-                        friend.setStatus(FriendStatus.STRANGER);
-
-                        friendUserInfo.getFriends().stream()
-                                .filter(f -> f.getProfile().getId().equals(currentUserInfo.getId()))
-                                .findFirst()
-                                .ifPresent(f -> f.setStatus(FriendStatus.STRANGER));
-
-//                        userInfoRepository.saveAll(Arrays.asList(currentUserInfo, friendUserInfo));
-                        userInfoRepository.save(currentUserInfo);
-                        userInfoRepository.save(friendUserInfo);
-                        Notification notification = new Notification(currentUserInfo.getLastName() + " vừa xóa kết bạn với bạn", NotificationType.DELETED_FRIEND, currentUserInfo.getId(), LocalDateTime.now());
-                        simpMessagingTemplate.convertAndSendToUser(friendUserInfo.getId(), "/private", notification);
-                        return "Xóa kết bạn với " + friendUserInfo.getUser().getPhone() + " thành công.";
-                    } else if (friend.getStatus().equals(FriendStatus.BLOCK)) {
-                        throw new FriendshipRelationshipException("Bạn đã chặn người này. Hãy bỏ chặn trước");
-                    } else if (friend.getStatus().equals(FriendStatus.BLOCKED)) {
-                        throw new FriendshipRelationshipException("Bạn đã bị chặn đối phương");
-                    } else {
-                        throw new FriendshipRelationshipException("Chưa kết bạn.");
-                    }
-                })
-                .orElseThrow(() -> new FriendshipRelationshipException("Chưa kết bạn."));
+        FriendStatus status = findFriendStatus(currentUserInfo, friendUserInfo);
+        if (status.equals(FriendStatus.FRIEND)) {
+            updateBothStatuses(currentUserInfo, friendUserInfo, FriendStatus.STRANGER, FriendStatus.STRANGER);
+            Notification notification = new Notification(currentUserInfo.getLastName() + " vừa xóa kết bạn với bạn", NotificationType.DELETED_FRIEND, currentUserInfo.getId(), LocalDateTime.now());
+            simpMessagingTemplate.convertAndSendToUser(friendUserInfo.getId(), "/private", notification);
+            return "Xóa kết bạn với " + friendUserInfo.getUser().getPhone() + " thành công.";
+        } else if (status.equals(FriendStatus.BLOCK)) {
+            throw new FriendshipRelationshipException("Bạn đã chặn người này. Hãy bỏ chặn trước");
+        } else if (status.equals(FriendStatus.BLOCKED)) {
+            throw new FriendshipRelationshipException("Bạn đã bị chặn đối phương");
+        } else {
+            throw new FriendshipRelationshipException("Chưa kết bạn.");
+        }
     }
 
     @Override
@@ -278,15 +251,12 @@ public class UserInfoServiceImpl implements UserInfoService {
         UserInfo friendUserInfo = findById(friendId);
 
 
-        Friend pendingFriendRequest = currentUserInfo.getFriends().stream()
-                .filter(friend -> friend.getProfile().getId().equals(friendUserInfo.getId()) && friend.getStatus().equals(FriendStatus.PENDING))
-                .findFirst()
-                .orElseThrow(() -> new FriendshipRelationshipException("Không có lời mời kết bạn nào được tìm thấy."));
-
-        Friend acceptedFriend = friendUserInfo.getFriends().stream()
-                .filter(friend -> friend.getProfile().getId().equals(currentUserInfo.getId()) && friend.getStatus().equals(FriendStatus.FRIEND_REQUEST))
-                .findFirst()
+        Friend pendingFriendRequest = friendRepository.findByOwnerAndProfile(currentUserInfo, friendUserInfo)
+                .filter(friend -> friend.getStatus().equals(FriendStatus.PENDING))
                 .orElseThrow(() -> new FriendshipRelationshipException("Không có lời mời kết bạn nào được tìm thấy."));
+        if (!findFriendStatus(friendUserInfo, currentUserInfo).equals(FriendStatus.FRIEND_REQUEST)) {
+            throw new FriendshipRelationshipException("Không có lời mời kết bạn nào được tìm thấy.");
+        }
 
         Message message = Message
                 .builder()
@@ -299,7 +269,7 @@ public class UserInfoServiceImpl implements UserInfoService {
                 .build();
         Chat chat;
 
-        if (pendingFriendRequest.getChat() == null || pendingFriendRequest.getChat().getId() == null) {
+        if (pendingFriendRequest.getChatId() == null) {
             chat = chatRepository.save(
                     Chat.builder()
                             .messages(List.of(message))
@@ -314,29 +284,36 @@ public class UserInfoServiceImpl implements UserInfoService {
                             .build()
             );
 
-            pendingFriendRequest.setStatus(FriendStatus.FRIEND);
-            pendingFriendRequest.setChat(chat);
-
-            acceptedFriend.setStatus(FriendStatus.FRIEND);
-            acceptedFriend.setChat(chat);
-
-            currentUserInfo.getChats().add(
+            long version = sequenceRepository.next(SequenceRepository.USER_CHAT_VERSION);
+            userChatRepository.save(
                     UserChat
                             .builder()
+                            .user(currentUserInfo)
                             .chat(chat)
                             .joinTime(LocalDateTime.now())
+                            .version(version)
+                            .peerId(friendUserInfo.getId())
+                            .name(friendUserInfo.getFirstName() + " " + friendUserInfo.getLastName())
+                            .avatar(friendUserInfo.getThumbnailAvatar())
+                            .lastMessage(userSummaryCache.summarize(chat.getLastMessage()))
                             .build()
             );
 
-            friendUserInfo.getChats().add(
+            userChatRepository.save(
                     UserChat
                             .builder()
+                            .user(friendUserInfo)
                             .chat(chat)
                             .joinTime(LocalDateTime.now())
+                            .version(version)
+                            .peerId(currentUserInfo.getId())
+                            .name(currentUserInfo.getFirstName() + " " + currentUserInfo.getLastName())
+                            .avatar(currentUserInfo.getThumbnailAvatar())
+                            .lastMessage(userSummaryCache.summarize(chat.getLastMessage()))
                             .build()
             );
         } else {
-            chat = chatRepository.findById(pendingFriendRequest.getChat().getId()).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat"));
+            chat = UnitOfWork.find(Chat.class, pendingFriendRequest.getChatId(), chatRepository::findById).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat"));
             chat.getMessages().add(message);
             chat.setLastMessage(
                     LastMessage.builder()
@@ -346,13 +323,11 @@ public class UserInfoServiceImpl implements UserInfoService {
                             .build()
             );
             chatRepository.save(chat);
-
-            pendingFriendRequest.setStatus(FriendStatus.FRIEND);
-            acceptedFriend.setStatus(FriendStatus.FRIEND);
         }
 
-        userInfoRepository.save(currentUserInfo);
-        userInfoRepository.save(friendUserInfo);
+        friendRepository.upsertStatus(currentUserInfo.getId(), friendUserInfo.getId(), FriendStatus.FRIEND, null, chat.getId());
+        friendRepository.upsertStatus(friendUserInfo.getId(), currentUserInfo.getId(), FriendStatus.FRIEND, null, chat.getId());
+        userChatRepository.appendChatMessage(chat.getId(), currentUserInfo.getId(), userSummaryCache.summarize(chat.getLastMessage()), sequenceRepository.next(SequenceRepository.USER_CHAT_VERSION));
         Notification notification = new Notification(currentUserInfo.getLastName() + " vừa chấp nhận lời mời kết bạn", NotificationType.ACCEPT_FRIEND_REQUEST, null, LocalDateTime.now());
         simpMessagingTemplate.convertAndSendToUser(friendUserInfo.getId(), "/private", notification);
         return "Chấp nhận lời mời kết bạn từ " + friendUserInfo.getUser().getPhone() + " thành công.";
@@ -363,32 +338,19 @@ public class UserInfoServiceImpl implements UserInfoService {
         UserInfo currentUserInfo = findUserInfoByUserId(userPrincipal.getId());
         UserInfo friendUserInfo = findById(friendId);
 
-        return currentUserInfo.getFriends().stream()
-                .filter(friend -> friend.getProfile().getId().equals(friendUserInfo.getId()))
-                .findFirst()
-                .map(friend -> {
-                    if (friend.getStatus().equals(FriendStatus.PENDING)) {
-                        friend.setStatus(FriendStatus.STRANGER);
-
-                        friendUserInfo.getFriends().stream()
-                                .filter(f -> f.getProfile().getId().equals(currentUserInfo.getId()))
-                                .findFirst()
-                                .ifPresent(f -> f.setStatus(FriendStatus.STRANGER));
-
-                        userInfoRepository.save(currentUserInfo);
-                        userInfoRepository.save(friendUserInfo);
-                        Notification notification = new Notification(currentUserInfo.getLastName() + " đã từ chối lời mời kết bạn của bạn", NotificationType.DECLINE_FRIEND_REQUEST, currentUserInfo.getId(), LocalDateTime.now());
-                        simpMessagingTemplate.convertAndSendToUser(friendUserInfo.getId(), "/private", notification);
-                        return "Từ chối lời mời kết bạn từ " + friendUserInfo.getUser().getPhone() + " thành công.";
-                    } else if (friend.getStatus().equals(FriendStatus.BLOCK)) {
-                        throw new FriendshipRelationshipException("Bạn đã chặn người này. Hãy bỏ chặn trước");
-                    } else if (friend.getStatus().equals(FriendStatus.BLOCKED)) {
-                        throw new FriendshipRelationshipException("Bạn đã bị chặn đối phương");
-                    } else {
-                        throw new FriendshipRelationshipException("Không có yêu cầu kết bạn nào được tìm thấy.");
-                    }
-                })
-                .orElseThrow(() -> new FriendshipRelationshipException("Không có yêu cầu kết bạn nào được tìm thấy."));
+        FriendStatus status = findFriendStatus(currentUserInfo, friendUserInfo);
+        if (status.equals(FriendStatus.PENDING)) {
+            updateBothStatuses(currentUserInfo, friendUserInfo, FriendStatus.STRANGER, FriendStatus.STRANGER);
+            Notification notification = new Notification(currentUserInfo.getLastName() + " đã từ chối lời mời kết bạn của bạn", NotificationType.DECLINE_FRIEND_REQUEST, currentUserInfo.getId(), LocalDateTime.now());
+            simpMessagingTemplate.convertAndSendToUser(friendUserInfo.getId(), "/private", notification);
+            return "Từ chối lời mời kết bạn từ " + friendUserInfo.getUser().getPhone() + " thành công.";
+        } else if (status.equals(FriendStatus.BLOCK)) {
+            throw new FriendshipRelationshipException("Bạn đã chặn người này. Hãy bỏ chặn trước");
+        } else if (status.equals(FriendStatus.BLOCKED)) {
+            throw new FriendshipRelationshipException("Bạn đã bị chặn đối phương");
+        } else {
+            throw new FriendshipRelationshipException("Không có yêu cầu kết bạn nào được tìm thấy.");
+        }
     }
 
     @Override
@@ -396,111 +358,95 @@ public class UserInfoServiceImpl implements UserInfoService {
         UserInfo currentUserInfo = findUserInfoByUserId(userPrincipal.getId());
         UserInfo friendUserInfo = findById(friendId);
 
-        return currentUserInfo.getFriends().stream()
-                .filter(friend -> friend.getProfile().getId().equals(friendUserInfo.getId()))
-                .findFirst()
-                .map(friend -> {
-                    if (friend.getStatus().equals(FriendStatus.FRIEND_REQUEST)) {
-                        friend.setStatus(FriendStatus.STRANGER);
-
-                        friendUserInfo.getFriends().stream()
-                                .filter(f -> f.getProfile().getId().equals(currentUserInfo.getId()))
-                                .findFirst()
-                                .ifPresent(f -> f.setStatus(FriendStatus.STRANGER));
-
-                        userInfoRepository.save(currentUserInfo);
-                        userInfoRepository.save(friendUserInfo);
-                        Notification notification = new Notification(currentUserInfo.getLastName() + " đã thu hồi lời mời kết bạn", NotificationType.CANCEL_FRIEND_REQUEST, currentUserInfo.getId(), LocalDateTime.now());
-                        simpMessagingTemplate.convertAndSendToUser(friendUserInfo.getId(), "/private", notification);
-                        return "Thu hồi lời mời kết bạn với " + friendUserInfo.getUser().getPhone() + " thành công.";
-                    } else if (friend.getStatus().equals(FriendStatus.BLOCK)) {
-                        throw new FriendshipRelationshipException("Bạn đã chặn người này. Hãy bỏ chặn trước");
-                    } else if (friend.getStatus().equals(FriendStatus.BLOCKED)) {
-                        throw new FriendshipRelationshipException("Bạn đã bị chặn đối phương");
-                    } else {
-                        throw new FriendshipRelationshipException("Không có yêu cầu kết bạn nào được tìm thấy.");
-                    }
-                })
-                .orElseThrow(() -> new FriendshipRelationshipException("Không có yêu cầu kết bạn nào được tìm thấy."));
+        FriendStatus status = findFriendStatus(currentUserInfo, friendUserInfo);
+        if (status.equals(FriendStatus.FRIEND_REQUEST)) {
+            updateBothStatuses(currentUserInfo, friendUserInfo, FriendStatus.STRANGER, FriendStatus.STRANGER);
+            Notification notification = new Notification(currentUserInfo.getLastName() + " đã thu hồi lời mời kết bạn", NotificationType.CANCEL_FRIEND_REQUEST, currentUserInfo.getId(), LocalDateTime.now());
+            simpMessagingTemplate.convertAndSendToUser(friendUserInfo.getId(), "/private", notification);
+            return "Thu hồi lời mời kết bạn với " + friendUserInfo.getUser().getPhone() + " thành công.";
+        } else if (status.equals(FriendStatus.BLOCK)) {
+            throw new FriendshipRelationshipException("Bạn đã chặn người này. Hãy bỏ chặn trước");
+        } else if (status.equals(FriendStatus.BLOCKED)) {
+            throw new FriendshipRelationshipException("Bạn đã bị chặn đối phương");
+        } else {
+            throw new FriendshipRelationshipException("Không có yêu cầu kết bạn nào được tìm thấy.");
+        }
     }
 
     @Override
-    public List<ChatRoomDTO> getAllChats(UserPrincipal userPrincipal) {
-        UserInfo senderInfo = findUserInfoByUserId(userPrincipal.getId());
-        List<UserChat> userChats = senderInfo.getChats();
-        return userChats.stream()
-                .filter(userChat -> !userChat.getStatus().equals(UserChatStatus.DELETED))
-                .map(chat -> buildChatRoomDTO(chat, senderInfo))
-                .sorted((chat1, chat2) -> {
-                    if (chat1.getStatus().equals(UserChatStatus.PINNED) && chat2.getStatus().equals(UserChatStatus.PINNED)) {
-                        return chat2.getName().compareTo(chat1.getName());
-                    } else if (chat1.getStatus().equals(UserChatStatus.PINNED)) {
-                        return -1;
-                    } else if (chat2.getStatus().equals(UserChatStatus.PINNED)) {
-                        return 1;
-                    } else {
-                        LocalDateTime time1 = chat1.getLastMessage().getCreatedAt();
-                        LocalDateTime time2 = chat2.getLastMessage().getCreatedAt();
-                        return time2.compareTo(time1);
-                    }
-                })
-                .collect(Collectors.toList());
+    public Page<ChatRoomDTO> getAllChats(UserPrincipal userPrincipal, Long since, Pageable pageable) {
+        UserInfo senderInfo = new UserInfo(findUserInfoIdByUserId(userPrincipal.getId()));
+        Page<UserChat> userChats;
+        if (since != null) {
+            // deleted entries are kept in the delta so the client can drop them from its local list
+            userChats = new PageImpl<>(userChatRepository.findAllByUserAndVersionGreaterThan(senderInfo, since));
+        } else {
+            userChats = userChatRepository.findChatList(senderInfo.getId(), pageable);
+        }
+        return userChats.map(userChat -> {
+            if (!userChat.hasSummary()) {
+                fillChatSummary(userChat, senderInfo);
+            }
+            return ChatRoomDTO.from(userChat);
+        });
+    }
 
+    @Override
+    public int countUnreadMessages(UserPrincipal userPrincipal) {
+        return userChatRepository.sumUnreadCount(findUserInfoIdByUserId(userPrincipal.getId()));
     }
 
     @Override
     public ChatRoomDTO updateUserChat(UserPrincipal userPrincipal, String chatId, UserChatUpdateDTO userChatUpdateDTO) {
-        UserInfo senderInfo = findUserInfoByUserId(userPrincipal.getId());
-        Optional<UserChat> chatToUpdate = senderInfo.getChats().stream()
-                .filter(userChat -> userChat.getChat().getId().equals(chatId))
-                .findFirst();
+        UserInfo senderInfo = new UserInfo(findUserInfoIdByUserId(userPrincipal.getId()));
+        Optional<UserChat> chatToUpdate = userChatRepository.findByUserAndChat(senderInfo, Chat.builder().id(chatId).build());
         if (chatToUpdate.isPresent()) {
             UserChat userChat = chatToUpdate.get();
             userChat.setStatus(userChatUpdateDTO.getStatus());
+            userChat.setVersion(sequenceRepository.next(SequenceRepository.USER_CHAT_VERSION));
             if (userChatUpdateDTO.getStatus().equals(UserChatStatus.DELETED)) {
                 userChat.setLastDeleteChatTime(LocalDateTime.now());
-                Chat chat = chatRepository.findById(userChat.getChat().getId()).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat để cập nhật"));
+                userChat.setUnreadCount(0);
+                Chat chat = UnitOfWork.find(Chat.class, userChat.getChatId(), chatRepository::findById).orElseThrow(() -> new DataNotFoundException("Không tìm thấy phòng chat để cập nhật"));
                 chat.getDeleteBy().add(senderInfo.getId());
                 chatRepository.save(chat);
             }
-            userInfoRepository.save(senderInfo);
-            return buildChatRoomDTO(userChat, senderInfo);
+            if (!userChat.hasSummary()) {
+                fillChatSummary(userChat, senderInfo);
+            }
+            userChatRepository.save(userChat);
+            return ChatRoomDTO.from(userChat);
         }
         throw new DataNotFoundException("Không tìm thấy phòng chat");
     }
 
-    private ChatRoomDTO buildChatRoomDTO(UserChat chat, UserInfo senderInfo) {
-        Chat chatRoom = chat.getChat();
+    /**
+     * Resolve the summary of a chat entry created before summaries were stored and persist it, so the chat is
+     * only resolved once
+     */
+    private void fillChatSummary(UserChat userChat, UserInfo senderInfo) {
+        Chat chatRoom = userChat.getChat();
         Group group = chatRoom.getGroup();
-        boolean isGroup = (group != null);
-        String name = isGroup ? chatRoom.getGroup().getName() : getMemberName(chatRoom, senderInfo);
-        String avatar = isGroup ? chatRoom.getGroup().getThumbnailAvatar() : getMemberAvatar(chatRoom, senderInfo);
-        return ChatRoomDTO.builder()
-                .id(chatRoom.getId())
-                .name(name)
-                .avatar(avatar)
-                .lastMessage(chatRoom.getLastMessage())
-                .isGroup(isGroup)
-                .groupId(isGroup ? chatRoom.getGroup().getId() : null)
-                .lastSeenMessageId(chat.getLastSeenMessageId())
-                .status(chat.getStatus())
-                .build();
-    }
-
-    private String getMemberName(Chat chatRoom, UserInfo senderInfo) {
-        return chatRoom.getMembers().stream()
-                .filter(member -> !member.getId().equals(senderInfo.getId()))
-                .map(member -> member.getFirstName() + " " + member.getLastName())
-                .findFirst()
-                .orElse(null);
-    }
-
-    private String getMemberAvatar(Chat chatRoom, UserInfo senderInfo) {
-        return chatRoom.getMembers().stream()
-                .filter(member -> !member.getId().equals(senderInfo.getId()))
-                .map(UserInfo::getThumbnailAvatar)
-                .filter(Objects::nonNull)
-                .findFirst()
-                .orElse(null);
+        if (group != null) {
+            userChat.setGroupId(group.getId());
+            userChat.setName(group.getName());
+            userChat.setAvatar(group.getThumbnailAvatar());
+        } else {
+            chatRoom.getMembers().stream()
+                    .filter(member -> !senderInfo.getId().equals(ReferenceUtil.idOf(member)))
+                    .findFirst()
+                    .map(userSummaryCache::get)
+                    .ifPresent(peer -> {
+                        userChat.setPeerId(peer.getId());
+                        userChat.setName(peer.getFirstName() + " " + peer.getLastName());
+                        userChat.setAvatar(peer.getThumbnailAvatar());
+                    });
+        }
+        userChat.setLastMessage(userSummaryCache.summarize(chatRoom.getLastMessage()));
+        // a new group or friend chat has no message yet
+        if (chatRoom.getLastMessage() != null) {
+            userChat.setLastMessageAt(chatRoom.getLastMessage().getCreatedAt());
+        }
+        userChatRepository.updateChatSummary(userChat);
     }
 }
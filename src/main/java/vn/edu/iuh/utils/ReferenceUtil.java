@@ -0,0 +1,40 @@
+package vn.edu.iuh.utils;
+
+import org.springframework.data.mongodb.core.convert.LazyLoadingProxy;
+import vn.edu.iuh.models.UserInfo;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Read the IDs behind {@code @DocumentReference} fields without resolving lazy proxies
+ */
+public final class ReferenceUtil {
+    private ReferenceUtil() {
+    }
+
+    public static String idOf(UserInfo userInfo) {
+        if (userInfo instanceof LazyLoadingProxy proxy) {
+            Object source = proxy.getSource();
+            return source == null ? null : source.toString();
+        }
+        return userInfo == null ? null : userInfo.getId();
+    }
+
+    /**
+     * Profile holding only its ID, to reference a profile without loading it
+     */
+    public static UserInfo reference(String id) {
+        UserInfo userInfo = new UserInfo();
+        userInfo.setId(id);
+        return userInfo;
+    }
+
+    public static List<String> idsOf(List<UserInfo> userInfos) {
+        if (userInfos instanceof LazyLoadingProxy proxy && proxy.getSource() instanceof Collection<?> source) {
+            return source.stream().filter(Objects::nonNull).map(Object::toString).toList();
+        }
+        return userInfos.stream().map(ReferenceUtil::idOf).toList();
+    }
+}
@@ -0,0 +1,106 @@
+package vn.edu.iuh.utils;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Fold Vietnamese text for search: lower case, no diacritics and {@code đ} read as {@code d}, so
+ * {@code "Tin nhắn"} and {@code "tin nhan"} give the same tokens
+ */
+public final class TextUtil {
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private TextUtil() {
+    }
+
+    public static String fold(String text) {
+        return foldWithOrigins(text).text();
+    }
+
+    /**
+     * @return about {@code radius} characters of the text around the first word that starts with one of the folded
+     * tokens, or the start of the text when none matches
+     */
+    public static String snippet(String text, List<String> tokens, int radius) {
+        if (text == null) {
+            return null;
+        }
+        Folded folded = foldWithOrigins(text);
+        int position = -1;
+        for (String token : tokens) {
+            int index = folded.text().indexOf(token);
+            while (index > 0 && Character.isLetterOrDigit(folded.text().charAt(index - 1))) {
+                index = folded.text().indexOf(token, index + 1);
+            }
+            if (index >= 0 && (position < 0 || index < position)) {
+                position = index;
+            }
+        }
+        position = position < 0 ? 0 : folded.origins()[position];
+        int start = Math.max(0, position - radius);
+        int end = Math.min(text.length(), position + radius);
+        // do not cut a letter off its marks or a surrogate pair
+        while (start > 0 && continuesCharacter(text.charAt(start))) {
+            start--;
+        }
+        while (end < text.length() && continuesCharacter(text.charAt(end))) {
+            end++;
+        }
+        return (start > 0 ? "…" : "") + text.substring(start, end) + (end < text.length() ? "…" : "");
+    }
+
+    /**
+     * @return distinct folded words of the text in order of appearance
+     */
+    public static List<String> tokenize(String text) {
+        return Arrays.stream(SEPARATORS.split(fold(text)))
+                .filter(token -> !token.isEmpty())
+                .distinct()
+                .toList();
+    }
+
+    /**
+     * Fold the text one code point at a time, keeping for every folded character the index of the original character
+     * it came from. Stripped marks and case mappings change the length, so folded positions cannot be used on the
+     * original text directly
+     */
+    private static Folded foldWithOrigins(String text) {
+        if (text == null) {
+            return new Folded("", new int[]{0});
+        }
+        StringBuilder folded = new StringBuilder(text.length());
+        int[] origins = new int[text.length() + 1];
+        for (int i = 0; i < text.length(); i += Character.charCount(text.codePointAt(i))) {
+            int codePoint = text.codePointAt(i);
+            String part = codePoint < 0x80 ? String.valueOf((char) Character.toLowerCase(codePoint)) : foldCodePoint(codePoint);
+            if (folded.length() + part.length() >= origins.length) {
+                origins = Arrays.copyOf(origins, Math.max(origins.length * 2, folded.length() + part.length() + 1));
+            }
+            for (int j = 0; j < part.length(); j++) {
+                origins[folded.length() + j] = i;
+            }
+            folded.append(part);
+        }
+        origins[folded.length()] = text.length();
+        return new Folded(folded.toString(), origins);
+    }
+
+    private static boolean continuesCharacter(char c) {
+        int type = Character.getType(c);
+        return Character.isLowSurrogate(c) || type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK || type == Character.ENCLOSING_MARK;
+    }
+
+    private static String foldCodePoint(int codePoint) {
+        String decomposed = Normalizer.normalize(Character.toString(codePoint).toLowerCase(), Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("").replace('đ', 'd');
+    }
+
+    /**
+     * @param origins index in the original text of each folded character, followed by the length of the original
+     */
+    private record Folded(String text, int[] origins) {
+    }
+}
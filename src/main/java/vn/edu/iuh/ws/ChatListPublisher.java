@@ -0,0 +1,63 @@
+package vn.edu.iuh.ws;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import vn.edu.iuh.dto.ChatListDeltaDTO;
+import vn.edu.iuh.dto.ChatListUpdateDTO;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Batches chat list deltas per user and pushes them to {@code /user/{id}/private}.
+ * Several deltas of the same chat within one flush interval collapse into the latest one
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ChatListPublisher {
+    private final SimpMessagingTemplate simpMessagingTemplate;
+    private final Map<String, Map<String, ChatListDeltaDTO>> pending = new ConcurrentHashMap<>();
+
+    public void publish(String userInfoId, ChatListDeltaDTO delta) {
+        pending.compute(userInfoId, (id, deltas) -> {
+            Map<String, ChatListDeltaDTO> chats = deltas == null ? new LinkedHashMap<>() : deltas;
+            ChatListDeltaDTO previous = chats.get(delta.getChatId());
+            if (previous == null || previous.getVersion() <= delta.getVersion()) {
+                chats.put(delta.getChatId(), delta);
+            }
+            return chats;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${app.chat-list.flush-interval-milliseconds:200}")
+    public void flush() {
+        for (String userInfoId : pending.keySet()) {
+            Map<String, ChatListDeltaDTO> deltas = pending.remove(userInfoId);
+            if (deltas == null || deltas.isEmpty()) {
+                continue;
+            }
+            ChatListUpdateDTO update = ChatListUpdateDTO.builder()
+                    .chats(new ArrayList<>(deltas.values()))
+                    .timestamp(LocalDateTime.now())
+                    .build();
+            try {
+                simpMessagingTemplate.convertAndSendToUser(userInfoId, "/private", update);
+            } catch (Exception e) {
+                log.warn("Push chat list update to {} failed: {}", userInfoId, e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+}
@@ -0,0 +1,158 @@
+package vn.edu.iuh.ws;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import vn.edu.iuh.dto.ReactionChangedDTO;
+import vn.edu.iuh.models.Message;
+import vn.edu.iuh.models.Reaction;
+import vn.edu.iuh.models.UserInfo;
+import vn.edu.iuh.models.enums.ReactionType;
+import vn.edu.iuh.repositories.ChatRepository;
+import vn.edu.iuh.repositories.MessageTailCache;
+import vn.edu.iuh.utils.ReferenceUtil;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Coalesces reaction taps per message, user and type. Taps within one flush interval are written as a single
+ * increment, then the message is read once and one {@link ReactionChangedDTO} per user and type is sent to
+ * {@code /chatroom/{chatId}}. Pending taps are flushed on shutdown and taps arriving after that are written directly,
+ * so at most one interval of taps is lost if the process is killed
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ReactionPublisher {
+    private final ChatRepository chatRepository;
+    private final MessageTailCache messageTailCache;
+    private final SimpMessagingTemplate simpMessagingTemplate;
+    private final Map<PendingReaction, Integer> pending = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    public void publish(String chatId, String messageId, String userInfoId, ReactionType type, int quantity) {
+        PendingReaction reaction = new PendingReaction(chatId, messageId, userInfoId, type);
+        if (closed) {
+            synchronized (this) {
+                write(Map.of(reaction, quantity));
+            }
+            return;
+        }
+        pending.merge(reaction, quantity, Integer::sum);
+    }
+
+    /**
+     * Drop the taps of one user on a message that were not written yet, used when the user removes their reactions.
+     * Takes the flush lock so taps being written are either stored before it returns or dropped, never re-queued
+     */
+    public synchronized void discard(String chatId, String messageId, String userInfoId) {
+        pending.keySet().removeIf(reaction -> reaction.chatId().equals(chatId) && reaction.messageId().equals(messageId) && reaction.userInfoId().equals(userInfoId));
+    }
+
+    /**
+     * Add the taps not written yet to a message read from the database, so a response shows them without the cached
+     * chat being changed. The message must not be shared
+     */
+    public Message applyPending(String chatId, Message message) {
+        pending.forEach((reaction, quantity) -> {
+            if (!reaction.chatId().equals(chatId) || !reaction.messageId().equals(message.getMessageId())) {
+                return;
+            }
+            Reaction existing = message.getReactions().stream()
+                    .filter(stored -> stored.getType() == reaction.type() && reaction.userInfoId().equals(ReferenceUtil.idOf(stored.getUser())))
+                    .findFirst()
+                    .orElse(null);
+            UserInfo user = existing != null ? existing.getUser() : ReferenceUtil.reference(reaction.userInfoId());
+            if (existing != null) {
+                existing.setQuantity(existing.getQuantity() + quantity);
+            } else {
+                message.getReactions().add(0, new Reaction(user, reaction.type(), quantity));
+            }
+            message.getReactionCounts().merge(reaction.type(), quantity, Integer::sum);
+            if (!ReferenceUtil.idsOf(message.getRecentReactors()).contains(reaction.userInfoId())) {
+                // copied as ID references, copying the lazy list itself would load every reactor
+                List<UserInfo> recentReactors = ReferenceUtil.idsOf(message.getRecentReactors()).stream()
+                        .map(ReferenceUtil::reference)
+                        .collect(Collectors.toCollection(ArrayList::new));
+                recentReactors.add(0, user);
+                message.setRecentReactors(new ArrayList<>(recentReactors.subList(0, Math.min(recentReactors.size(), ChatRepository.RECENT_REACTORS))));
+            }
+        });
+        return message;
+    }
+
+    @Scheduled(fixedDelayString = "${app.reaction.flush-interval-milliseconds:500}")
+    public synchronized void flush() {
+        Map<PendingReaction, Integer> reactions = new LinkedHashMap<>();
+        for (PendingReaction reaction : pending.keySet()) {
+            Integer quantity = pending.remove(reaction);
+            if (quantity != null) {
+                reactions.put(reaction, quantity);
+            }
+        }
+        if (!reactions.isEmpty()) {
+            write(reactions);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        flush();
+    }
+
+    private void write(Map<PendingReaction, Integer> reactions) {
+        Map<String, Map<PendingReaction, Integer>> byMessage = new LinkedHashMap<>();
+        reactions.forEach((reaction, quantity) -> byMessage
+                .computeIfAbsent(reaction.chatId() + ":" + reaction.messageId(), key -> new LinkedHashMap<>())
+                .put(reaction, quantity));
+        byMessage.values().forEach(messageReactions -> {
+            Map<PendingReaction, Integer> written = new LinkedHashMap<>();
+            messageReactions.forEach((reaction, quantity) -> {
+                try {
+                    chatRepository.addReaction(reaction.chatId(), reaction.messageId(), reaction.userInfoId(), reaction.type(), quantity);
+                    written.put(reaction, quantity);
+                } catch (Exception e) {
+                    log.warn("Write reaction on message {} failed, retry on next flush: {}", reaction.messageId(), e.getMessage());
+                    pending.merge(reaction, quantity, Integer::sum);
+                }
+            });
+            if (!written.isEmpty()) {
+                messageTailCache.evict(written.keySet().iterator().next().chatId());
+                broadcast(written.keySet().iterator().next(), written);
+            }
+        });
+    }
+
+    private void broadcast(PendingReaction first, Map<PendingReaction, Integer> written) {
+        try {
+            Message message = chatRepository.findMessage(first.chatId(), first.messageId()).orElse(null);
+            if (message == null) {
+                return;
+            }
+            written.keySet().forEach(reaction -> simpMessagingTemplate.convertAndSend("/chatroom/" + reaction.chatId(), ReactionChangedDTO.builder()
+                    .messageId(reaction.messageId())
+                    .userId(reaction.userInfoId())
+                    .reactionType(reaction.type())
+                    .quantity(message.getReactions().stream()
+                            .filter(existingReaction -> existingReaction.getType() == reaction.type() && reaction.userInfoId().equals(ReferenceUtil.idOf(existingReaction.getUser())))
+                            .mapToInt(Reaction::getQuantity)
+                            .sum())
+                    .reactionCounts(message.getReactionCounts())
+                    .build()));
+        } catch (Exception e) {
+            log.warn("Push reactions of message {} failed: {}", first.messageId(), e.getMessage());
+        }
+    }
+
+    private record PendingReaction(String chatId, String messageId, String userInfoId, ReactionType type) {
+    }
+}
@@ -0,0 +1,92 @@
+package vn.edu.iuh.benchmarks;
+
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import vn.edu.iuh.config.ModelMapperConfig;
+import vn.edu.iuh.dto.FriendDTO;
+import vn.edu.iuh.dto.GroupDTO;
+import vn.edu.iuh.models.Chat;
+import vn.edu.iuh.models.Friend;
+import vn.edu.iuh.models.Group;
+import vn.edu.iuh.models.UserInfo;
+import vn.edu.iuh.models.enums.FriendStatus;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handwritten {@code from} factories of the DTOs against the ModelMapper path they replaced. ChatRoomDTO is
+ * left out: ModelMapper cannot map it, because it matches {@code groupId} onto the {@code isGroup} flag. Run with
+ * {@code mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ * "-Dexec.args=-cp %classpath vn.edu.iuh.benchmarks.DtoMapperBenchmark"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DtoMapperBenchmark {
+    private ModelMapper modelMapper;
+    private Friend friend;
+    private Group group;
+
+    @Setup
+    public void setUp() {
+        modelMapper = new ModelMapperConfig().modelMapper();
+        // getChatId() and getChat().getId() both match chatId since the entities expose the reference ID
+        modelMapper.emptyTypeMap(Friend.class, FriendDTO.class)
+                .addMappings(mapper -> mapper.map(Friend::getChatId, FriendDTO::setChatId))
+                .implicitMappings();
+        modelMapper.emptyTypeMap(Group.class, GroupDTO.class)
+                .addMappings(mapper -> mapper.map(Group::getChatId, GroupDTO::setChatId))
+                .implicitMappings();
+        Chat chat = Chat.builder().id("65f0c1a2b3c4d5e6f7a8b9c0").build();
+        UserInfo profile = new UserInfo();
+        profile.setId("65f0c1a2b3c4d5e6f7a8b9c1");
+        profile.setFirstName("Nguyễn");
+        profile.setLastName("An");
+        friend = Friend.builder()
+                .id("65f0c1a2b3c4d5e6f7a8b9c2")
+                .profile(profile)
+                .displayName("An")
+                .status(FriendStatus.FRIEND)
+                .chat(chat)
+                .build();
+        group = Group.builder()
+                .id("65f0c1a2b3c4d5e6f7a8b9c3")
+                .name("Nhóm bạn")
+                .thumbnailAvatar("avatar.png")
+                .chat(chat)
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .build();
+    }
+
+    @Benchmark
+    public FriendDTO friendHandwritten() {
+        return FriendDTO.from(friend);
+    }
+
+    @Benchmark
+    public FriendDTO friendModelMapper() {
+        return modelMapper.map(friend, FriendDTO.class);
+    }
+
+    @Benchmark
+    public GroupDTO groupHandwritten() {
+        return GroupDTO.from(group);
+    }
+
+    @Benchmark
+    public GroupDTO groupModelMapper() {
+        return modelMapper.map(group, GroupDTO.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DtoMapperBenchmark.class.getSimpleName()).build()).run();
+    }
+}
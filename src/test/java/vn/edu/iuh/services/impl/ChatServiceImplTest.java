@@ -0,0 +1,191 @@
+package vn.edu.iuh.services.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.AutowiredAnnotationBeanPostProcessor;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.mongodb.core.convert.LazyLoadingProxy;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.SpringHandlerInstantiator;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import vn.edu.iuh.models.Chat;
+import vn.edu.iuh.models.Message;
+import vn.edu.iuh.models.UserChat;
+import vn.edu.iuh.models.UserInfo;
+import vn.edu.iuh.models.UserSummary;
+import vn.edu.iuh.projections.UserInfoId;
+import vn.edu.iuh.repositories.*;
+import vn.edu.iuh.security.UserPrincipal;
+import vn.edu.iuh.utils.ReferenceUtil;
+import vn.edu.iuh.ws.ChatListPublisher;
+import vn.edu.iuh.ws.ReactionPublisher;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Mongo commands sent to load and render a history page, counted by {@link MongoCommandCounter} into the
+ * {@link UnitOfWork} of the request. No database runs here: every repository call counts as one command, and so does
+ * resolving a lazy profile reference, as a {@code @DocumentReference(lazy = true)} proxy would query on first use
+ */
+class ChatServiceImplTest {
+    private static final String CHAT_ID = "65f0c1a2b3c4d5e6f7a8b9c0";
+    private static final String USER_ID = "65f0c1a2b3c4d5e6f7a8b9c1";
+    private static final int PAGE_SIZE = 50;
+    private static final int SENDERS = 10;
+
+    private final MongoCommandCounter mongoCommandCounter = new MongoCommandCounter();
+    private ChatServiceImpl chatService;
+    private ObjectMapper objectMapper;
+    private List<String> senderIds;
+    private List<Message> messages;
+
+    @BeforeEach
+    void setUp() {
+        ChatRepository chatRepository = repository(ChatRepository.class);
+        UserInfoRepository userInfoRepository = repository(UserInfoRepository.class);
+        UserChatRepository userChatRepository = repository(UserChatRepository.class);
+        MessageArchiveRepository messageArchiveRepository = repository(MessageArchiveRepository.class);
+        UserSummaryCache userSummaryCache = new UserSummaryCache(userInfoRepository, 10000);
+        MessageTailCache messageTailCache = new MessageTailCache(chatRepository, PAGE_SIZE, 1000);
+        chatService = new ChatServiceImpl(
+                chatRepository,
+                userInfoRepository,
+                userChatRepository,
+                repository(SearchableMessageRepository.class),
+                repository(ChatAttachmentRepository.class),
+                userSummaryCache,
+                repository(SequenceRepository.class),
+                new ReferenceResolver(userInfoRepository, userSummaryCache),
+                new ReplyPreviewCache(chatRepository, messageArchiveRepository, userSummaryCache, 10000),
+                messageTailCache,
+                messageArchiveRepository,
+                new MessageArchiveServiceImpl(chatRepository, messageArchiveRepository, messageTailCache),
+                mock(SimpMessagingTemplate.class),
+                mock(ChatListPublisher.class),
+                mock(ReactionPublisher.class)
+        );
+        // senders are rendered like in a response, through the serializer backed by the summary cache
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        AutowiredAnnotationBeanPostProcessor autowiredAnnotationBeanPostProcessor = new AutowiredAnnotationBeanPostProcessor();
+        autowiredAnnotationBeanPostProcessor.setBeanFactory(beanFactory);
+        beanFactory.addBeanPostProcessor(autowiredAnnotationBeanPostProcessor);
+        beanFactory.registerSingleton("userSummaryCache", userSummaryCache);
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .handlerInstantiator(new SpringHandlerInstantiator(beanFactory))
+                .build();
+
+        // 120 messages, each with its own lazy sender reference, the newest one quotes a message older than the page
+        senderIds = IntStream.range(0, SENDERS).mapToObj(i -> new ObjectId().toHexString()).toList();
+        String userInfoId = senderIds.get(0);
+        messages = IntStream.range(0, 120)
+                .mapToObj(i -> Message.builder()
+                        .messageId(new ObjectId())
+                        .sender(lazyReference(senderIds.get(i % SENDERS)))
+                        .content("Tin nhắn " + i)
+                        .createdAt(LocalDateTime.now().minusMinutes(120 - i))
+                        .build())
+                .toList();
+        messages.get(119).setReplyMessageId(new ObjectId(messages.get(10).getMessageId()));
+        Chat header = Chat.builder()
+                .id(CHAT_ID)
+                .members(senderIds.stream().map(ReferenceUtil::reference).toList())
+                .build();
+
+        UserInfoId userInfoIdProjection = () -> userInfoId;
+        when(userInfoRepository.findIdByUser(any())).thenReturn(Optional.of(userInfoIdProjection));
+        when(chatRepository.findHeader(CHAT_ID)).thenReturn(Optional.of(header));
+        when(userChatRepository.findByUserAndChat(any(), any())).thenReturn(Optional.of(UserChat.builder().build()));
+        when(chatRepository.findLatestMessages(CHAT_ID, PAGE_SIZE)).thenReturn(messages.subList(120 - PAGE_SIZE, 120));
+        when(chatRepository.countMessages(CHAT_ID, userInfoId, null)).thenReturn(120L);
+        when(chatRepository.findMessages(eq(CHAT_ID), anyCollection())).thenReturn(List.of(messages.get(10)));
+        when(messageArchiveRepository.findHeadersByChatId(CHAT_ID)).thenReturn(List.of());
+        when(userInfoRepository.findSummariesByIdIn(anyCollection())).thenAnswer(invocation -> invocation.<Collection<String>>getArgument(0).stream()
+                .map(this::summary)
+                .toList());
+        when(userInfoRepository.findSummaryById(anyString())).thenAnswer(invocation -> Optional.of(summary(invocation.getArgument(0))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        UnitOfWork.end();
+    }
+
+    @Test
+    void firstPageOfFiftyMessagesTakesEightCommands() throws Exception {
+        UnitOfWork unitOfWork = UnitOfWork.begin();
+
+        Page<Message> page = chatService.getAllMessages(CHAT_ID, principal(), PageRequest.of(0, PAGE_SIZE), null);
+        String json = objectMapper.writeValueAsString(page.getContent());
+
+        assertEquals(messages.subList(120 - PAGE_SIZE, 120), page.getContent());
+        assertEquals(120, page.getTotalElements());
+        assertNotNull(page.getContent().get(PAGE_SIZE - 1).getReplyPreview());
+        objectMapper.readTree(json).forEach(message -> assertEquals("Người dùng", message.get("sender").get("firstName").asText()));
+        // profile ID, chat header, membership, tail, count, archive headers, sender summaries, quoted message. The
+        // ten senders are summarized with one query and none of the fifty references is resolved
+        assertEquals(8, unitOfWork.getMongoCommands());
+    }
+
+    @Test
+    void warmPageOfFiftyMessagesTakesFiveCommands() throws Exception {
+        chatService.getAllMessages(CHAT_ID, principal(), PageRequest.of(0, PAGE_SIZE), null);
+        UnitOfWork unitOfWork = UnitOfWork.begin();
+
+        Page<Message> page = chatService.getAllMessages(CHAT_ID, principal(), PageRequest.of(0, PAGE_SIZE), null);
+        objectMapper.writeValueAsString(page.getContent());
+
+        assertEquals(PAGE_SIZE, page.getNumberOfElements());
+        // tail, summaries and reply previews are served from memory
+        assertEquals(5, unitOfWork.getMongoCommands());
+    }
+
+    private <T> T repository(Class<T> type) {
+        return mock(type, withSettings().invocationListeners(report -> mongoCommandCounter.commandStarted(null)));
+    }
+
+    /**
+     * Stand-in for the proxy of a lazy {@code @DocumentReference}: it answers {@link LazyLoadingProxy#getSource()}
+     * with the stored ID, any other call resolves the profile
+     */
+    private UserInfo lazyReference(String id) {
+        UserInfo target = new UserInfo(id);
+        return mock(UserInfo.class, withSettings()
+                .extraInterfaces(LazyLoadingProxy.class)
+                .defaultAnswer(invocation -> switch (invocation.getMethod().getName()) {
+                    case "getSource" -> new ObjectId(id);
+                    case "toString" -> "LazyLoadingProxy(" + id + ")";
+                    case "getTarget" -> {
+                        mongoCommandCounter.commandStarted(null);
+                        yield target;
+                    }
+                    default -> {
+                        mongoCommandCounter.commandStarted(null);
+                        yield invocation.getMethod().invoke(target, invocation.getArguments());
+                    }
+                }));
+    }
+
+    private UserSummary summary(String id) {
+        return UserSummary.builder().id(id).firstName("Người dùng").lastName(id).build();
+    }
+
+    private static UserPrincipal principal() {
+        UserPrincipal userPrincipal = new UserPrincipal();
+        userPrincipal.setId(USER_ID);
+        return userPrincipal;
+    }
+}
@@ -0,0 +1,127 @@
+package vn.edu.iuh.services.impl;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import vn.edu.iuh.models.Message;
+import vn.edu.iuh.models.MessageArchive;
+import vn.edu.iuh.models.UserInfo;
+import vn.edu.iuh.repositories.ChatRepository;
+import vn.edu.iuh.repositories.MessageArchiveRepository;
+import vn.edu.iuh.repositories.MessageTailCache;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+class MessageArchiveServiceImplTest {
+    private static final String CHAT_ID = "65f0c1a2b3c4d5e6f7a8b9c0";
+    private static final String USER_ID = "65f0c1a2b3c4d5e6f7a8b9c1";
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private MessageArchiveRepository messageArchiveRepository;
+    private MessageArchiveServiceImpl messageArchiveService;
+    // history order: 40 messages in the older segment, 40 in the newer one, then 30 still in the chat
+    private List<Message> history;
+    private MessageArchive older;
+    private MessageArchive newer;
+
+    @BeforeEach
+    void setUp() {
+        messageArchiveRepository = mock(MessageArchiveRepository.class);
+        messageArchiveService = new MessageArchiveServiceImpl(mock(ChatRepository.class), messageArchiveRepository, mock(MessageTailCache.class));
+        history = IntStream.range(0, 110)
+                .mapToObj(i -> Message.builder()
+                        .messageId(new ObjectId())
+                        .content("Tin nhắn " + i)
+                        .createdAt(START.plusMinutes(i))
+                        .build())
+                .toList();
+        older = segment("older", history.subList(0, 40));
+        newer = segment("newer", history.subList(40, 80));
+        when(messageArchiveRepository.findHeadersByChatId(CHAT_ID)).thenReturn(List.of(newer, older));
+    }
+
+    @Test
+    void firstPageIsFilledWithNewestArchivedMessages() {
+        Page<Message> page = messageArchiveService.appendArchivedMessages(CHAT_ID, USER_ID, null, livePage(PageRequest.of(0, 50)));
+
+        assertEquals(history.subList(60, 110), page.getContent());
+        assertEquals(110, page.getTotalElements());
+        // the older segment is counted from its header only
+        verify(messageArchiveRepository, never()).read(older);
+    }
+
+    @Test
+    void pageSpanningTwoSegmentsKeepsHistoryOrder() {
+        Page<Message> page = messageArchiveService.appendArchivedMessages(CHAT_ID, USER_ID, null, livePage(PageRequest.of(1, 50)));
+
+        assertEquals(history.subList(10, 60), page.getContent());
+        assertEquals(110, page.getTotalElements());
+    }
+
+    @Test
+    void lastPageHoldsOldestMessages() {
+        Page<Message> page = messageArchiveService.appendArchivedMessages(CHAT_ID, USER_ID, null, livePage(PageRequest.of(2, 50)));
+
+        assertEquals(history.subList(0, 10), page.getContent());
+        assertEquals(3, page.getTotalPages());
+    }
+
+    @Test
+    void messagesDeletedByUserAreLeftOutOfPagesAndTotal() {
+        List<Message> deleted = history.subList(70, 75);
+        deleted.forEach(message -> message.getDeleteBy().add(new UserInfo(USER_ID)));
+        newer.setDeleteCounts(Map.of(USER_ID, deleted.size()));
+
+        Page<Message> page = messageArchiveService.appendArchivedMessages(CHAT_ID, USER_ID, null, livePage(PageRequest.of(0, 50)));
+
+        List<Message> expected = new ArrayList<>(history.subList(55, 110));
+        expected.removeAll(deleted);
+        assertEquals(expected, page.getContent());
+        assertEquals(105, page.getTotalElements());
+    }
+
+    @Test
+    void segmentCutByClearedHistoryIsCountedFromItsMessages() {
+        LocalDateTime after = history.get(59).getCreatedAt();
+
+        Page<Message> page = messageArchiveService.appendArchivedMessages(CHAT_ID, USER_ID, after, livePage(PageRequest.of(0, 50)));
+
+        assertEquals(history.subList(60, 110), page.getContent());
+        assertEquals(50, page.getTotalElements());
+        // the cut segment is read once, to count it and to fill the page
+        verify(messageArchiveRepository, times(1)).read(newer);
+        verify(messageArchiveRepository, never()).read(older);
+    }
+
+    private Page<Message> livePage(Pageable pageable) {
+        List<Message> live = history.subList(80, 110);
+        int from = (int) Math.min(live.size(), Math.max(0, live.size() - pageable.getOffset() - pageable.getPageSize()));
+        int to = (int) Math.max(0, live.size() - pageable.getOffset());
+        return new PageImpl<>(live.subList(from, to), pageable, live.size());
+    }
+
+    private MessageArchive segment(String id, List<Message> messages) {
+        MessageArchive archive = MessageArchive.builder()
+                .id(id)
+                .chatId(CHAT_ID)
+                .firstMessageId(new ObjectId(messages.get(0).getMessageId()))
+                .lastMessageId(new ObjectId(messages.get(messages.size() - 1).getMessageId()))
+                .firstCreatedAt(messages.get(0).getCreatedAt())
+                .lastCreatedAt(messages.get(messages.size() - 1).getCreatedAt())
+                .count(messages.size())
+                .build();
+        when(messageArchiveRepository.read(archive)).thenReturn(messages);
+        return archive;
+    }
+}
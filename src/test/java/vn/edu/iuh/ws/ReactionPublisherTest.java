@@ -0,0 +1,109 @@
+package vn.edu.iuh.ws;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import vn.edu.iuh.models.Message;
+import vn.edu.iuh.models.enums.ReactionType;
+import vn.edu.iuh.repositories.ChatRepository;
+import vn.edu.iuh.repositories.MessageTailCache;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ReactionPublisherTest {
+    private static final String CHAT_ID = "65f0c1a2b3c4d5e6f7a8b9c0";
+    private static final String MESSAGE_ID = "65f0c1a2b3c4d5e6f7a8b9c1";
+    private static final String USER_ID = "65f0c1a2b3c4d5e6f7a8b9c2";
+    private static final String OTHER_USER_ID = "65f0c1a2b3c4d5e6f7a8b9c3";
+
+    private ChatRepository chatRepository;
+    private MessageTailCache messageTailCache;
+    private ReactionPublisher reactionPublisher;
+
+    @BeforeEach
+    void setUp() {
+        chatRepository = mock(ChatRepository.class);
+        messageTailCache = mock(MessageTailCache.class);
+        reactionPublisher = new ReactionPublisher(chatRepository, messageTailCache, mock(SimpMessagingTemplate.class));
+        when(chatRepository.findMessage(CHAT_ID, MESSAGE_ID)).thenReturn(Optional.of(message()));
+    }
+
+    @Test
+    void tapsOfOneIntervalAreWrittenAsOneIncrement() {
+        reactionPublisher.publish(CHAT_ID, MESSAGE_ID, USER_ID, ReactionType.LIKE, 1);
+        reactionPublisher.publish(CHAT_ID, MESSAGE_ID, USER_ID, ReactionType.LIKE, 2);
+        reactionPublisher.publish(CHAT_ID, MESSAGE_ID, USER_ID, ReactionType.LIKE, 1);
+        reactionPublisher.publish(CHAT_ID, MESSAGE_ID, OTHER_USER_ID, ReactionType.LIKE, 1);
+
+        reactionPublisher.flush();
+        reactionPublisher.flush();
+
+        verify(chatRepository).addReaction(CHAT_ID, MESSAGE_ID, USER_ID, ReactionType.LIKE, 4);
+        verify(chatRepository).addReaction(CHAT_ID, MESSAGE_ID, OTHER_USER_ID, ReactionType.LIKE, 1);
+        verify(chatRepository, times(2)).addReaction(anyString(), anyString(), anyString(), any(), anyInt());
+        // one read for the broadcast of the whole message
+        verify(chatRepository, times(1)).findMessage(CHAT_ID, MESSAGE_ID);
+        verify(messageTailCache).evict(CHAT_ID);
+    }
+
+    @Test
+    void discardedTapsAreNotWritten() {
+        reactionPublisher.publish(CHAT_ID, MESSAGE_ID, USER_ID, ReactionType.LIKE, 3);
+        reactionPublisher.publish(CHAT_ID, MESSAGE_ID, OTHER_USER_ID, ReactionType.LOVE, 1);
+
+        reactionPublisher.discard(CHAT_ID, MESSAGE_ID, USER_ID);
+        reactionPublisher.flush();
+
+        verify(chatRepository, never()).addReaction(eq(CHAT_ID), eq(MESSAGE_ID), eq(USER_ID), any(), anyInt());
+        verify(chatRepository).addReaction(CHAT_ID, MESSAGE_ID, OTHER_USER_ID, ReactionType.LOVE, 1);
+    }
+
+    @Test
+    void failedWriteIsRetriedOnNextFlush() {
+        doThrow(new IllegalStateException("timeout")).doNothing()
+                .when(chatRepository).addReaction(CHAT_ID, MESSAGE_ID, USER_ID, ReactionType.LIKE, 2);
+        reactionPublisher.publish(CHAT_ID, MESSAGE_ID, USER_ID, ReactionType.LIKE, 2);
+
+        reactionPublisher.flush();
+        reactionPublisher.flush();
+
+        verify(chatRepository, times(2)).addReaction(CHAT_ID, MESSAGE_ID, USER_ID, ReactionType.LIKE, 2);
+    }
+
+    @Test
+    void discardDropsTapsRequeuedByFailedWrite() {
+        doThrow(new IllegalStateException("timeout"))
+                .when(chatRepository).addReaction(CHAT_ID, MESSAGE_ID, USER_ID, ReactionType.LIKE, 2);
+        reactionPublisher.publish(CHAT_ID, MESSAGE_ID, USER_ID, ReactionType.LIKE, 2);
+        reactionPublisher.flush();
+
+        reactionPublisher.discard(CHAT_ID, MESSAGE_ID, USER_ID);
+        reactionPublisher.flush();
+
+        verify(chatRepository, times(1)).addReaction(anyString(), anyString(), anyString(), any(), anyInt());
+    }
+
+    @Test
+    void pendingTapsAreAppliedToReadMessage() {
+        reactionPublisher.publish(CHAT_ID, MESSAGE_ID, USER_ID, ReactionType.LIKE, 2);
+        reactionPublisher.publish(CHAT_ID, MESSAGE_ID, USER_ID, ReactionType.LIKE, 1);
+
+        Message message = reactionPublisher.applyPending(CHAT_ID, message());
+
+        assertEquals(3, message.getReactionCounts().get(ReactionType.LIKE));
+        assertEquals(3, message.getReactions().get(0).getQuantity());
+        assertTrue(message.getRecentReactors().stream().anyMatch(reactor -> USER_ID.equals(reactor.getId())));
+    }
+
+    private static Message message() {
+        return Message.builder()
+                .messageId(new ObjectId(MESSAGE_ID))
+                .build();
+    }
+}